@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.utils.similarity;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The kernels with the Vector API of JDK 17 (jdk.incubator.vector), over the
+ * preferred vector width of the platform. The lanes are summed in a different
+ * order than the scalar loops, so the results may differ in the last bits.
+ *
+ * Built by the jdk17 profile only, see Kernels.
+ */
+public class VectorKernels extends Kernels {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final double LOG2 = Math.log(2.0);
+
+	public String getName() {
+		return "vector (" + SPECIES.vectorBitSize() + " bits)";
+	}
+
+	public double dot(double[] a, double[] b, int n) {
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+			DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+			DoubleVector vb = DoubleVector.fromArray(SPECIES, b, i);
+			acc = va.fma(vb, acc);
+		}
+
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++)
+			sum += a[i] * b[i];
+
+		return sum;
+	}
+
+	public double distanceL1(double[] a, double[] b, int n) {
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+			DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+			DoubleVector vb = DoubleVector.fromArray(SPECIES, b, i);
+			acc = acc.add(va.sub(vb).abs());
+		}
+
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++)
+			sum += Math.abs(a[i] - b[i]);
+
+		return sum;
+	}
+
+	public double zeroKL(double[] p, double[] q, int n) {
+		DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+		DoubleVector div = DoubleVector.zero(SPECIES);
+		DoubleVector gammaMass = DoubleVector.zero(SPECIES);
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+			DoubleVector vp = DoubleVector.fromArray(SPECIES, p, i);
+			DoubleVector vq = DoubleVector.fromArray(SPECIES, q, i);
+
+			VectorMask<Double> nonZero = vp.compare(VectorOperators.NE, 0.0);
+			VectorMask<Double> small = vq.compare(VectorOperators.LE, 0.000001);
+			//log(1) = 0 in the lanes without a log-ratio, whatever p/q is there.
+			DoubleVector ratio = one.blend(vp.div(vq), nonZero.andNot(small));
+			div = vp.fma(ratio.lanewise(VectorOperators.LOG), div);
+			gammaMass = gammaMass.add(vp, nonZero.and(small));
+		}
+
+		double sumDiv = div.reduceLanes(VectorOperators.ADD);
+		double sumGamma = gammaMass.reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++) {
+			double pi = p[i];
+			if (pi == 0.0)
+				continue;
+
+			if (q[i] <= 0.000001)
+				sumGamma += pi;
+			else
+				sumDiv += pi * Math.log(pi / q[i]);
+		}
+
+		return sumDiv / LOG2 + sumGamma * 10;
+	}
+
+	public void scaleAdd(double[] y, double a, double[] x, double b, int n) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+			DoubleVector vy = DoubleVector.fromArray(SPECIES, y, i);
+			DoubleVector vx = DoubleVector.fromArray(SPECIES, x, i);
+			vx.mul(b).add(vy.mul(a)).intoArray(y, i);
+		}
+
+		for (; i < n; i++)
+			y[i] = a * y[i] + b * x[i];
+	}
+
+	public void scaleShift(double[] y, double a, double c, int n) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+			DoubleVector vy = DoubleVector.fromArray(SPECIES, y, i);
+			vy.fma(a, c).intoArray(y, i);
+		}
+
+		for (; i < n; i++)
+			y[i] = a * y[i] + c;
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import ca.ualberta.entitylinking.common.data.Document;
+import ca.ualberta.entitylinking.common.data.Entity;
+import ca.ualberta.entitylinking.common.data.Mention;
+import ca.ualberta.entitylinking.common.indexing.TFIDF3x;
+import ca.ualberta.entitylinking.common.indexing.Tokenizer;
+import ca.ualberta.entitylinking.config.WNEDConfig;
+import ca.ualberta.entitylinking.graph.algorithms.PersonalizedPageRank;
+import ca.ualberta.entitylinking.graph.similarity.context.EntityContextCache;
+import ca.ualberta.entitylinking.graph.similarity.context.MentionContextCache;
+
+/**
+ * The state of linking one document.
+ *
+ * The knowledge base components (graph, indexes, NER) held by SemanticSignatureEL
+ * are shared read-only by all requests, while everything that belongs to a single
+ * document lives here, including the intermediate results passed between the
+ * linking stages. A context is created for each document and must only be used
+ * by one thread at a time.
+ *
+ * If a deadline is configured (docDeadlineMs), the clock starts when the document
+ * is annotated. Past the deadline the rank stage steps down to cheaper strategies,
+ * and the level it ended up with is recorded here:
+ * <ol start="0">
+ * <li>full: the configured strategy.</li>
+ * <li>noIteration: one document signature is used for the remaining mentions.</li>
+ * <li>noExpansion: the graph is rebuilt from the candidates only (expandLevel 0).</li>
+ * <li>priorContext: prior probability and context similarity, as in PriorProbEL.</li>
+ * </ol>
+ */
+public class LinkingContext {
+	public static final int LEVEL_FULL = 0;
+	public static final int LEVEL_NO_ITERATION = 1;
+	public static final int LEVEL_NO_EXPANSION = 2;
+	public static final int LEVEL_PRIOR_CONTEXT = 3;
+
+	private static final String[] LEVEL_NAMES = {"full", "noIteration", "noExpansion", "priorContext"};
+
+	//the true entity of mentions (if known), only used for logging.
+	Map<Mention, String> truth = new HashMap<Mention, String>();
+
+	//cache the context of mentions for efficiency.
+	MentionContextCache mentionCtxCache = null;
+	//cache the context of entities for efficiency.
+	EntityContextCache entityCtxCache = null;
+
+	//annotations given by the caller (see setDocument and setMentionTypes), used
+	//instead of running the NER.
+	Document document = null;
+	List<String> mentionTypes = null;
+
+	//the results of the linking stages, each stage fills in its part.
+	//annotate: the mentions of the document.
+	List<Mention> mentions = null;
+	//with dedupMentions: all the mentions, while only the representatives of their
+	//classes are in mentions, and the other members of each class (see MentionClasses).
+	List<Mention> allMentions = null;
+	Map<Mention, List<Mention>> duplicates = null;
+	//selectCandidates: the candidates of each mention, and the graph nodes.
+	Map<Mention, Map<Entity, Double>> candMap = null;
+	SemanticSignatureEL.WeightCache weightCache = null;
+	Map<String, Double> unambigEntities = null;
+	Set<String> entities = null;
+	//buildGraph: the document graph.
+	Map<String, Integer> e2id = null;
+	PersonalizedPageRank ranker = null;
+	//with compareEngines: the rankers of the same graph with the other engines, by engine.
+	Map<String, PersonalizedPageRank> comparedRankers = null;
+	//rank: the document signatures by their effective preference (see ELUtils.preferenceKey).
+	Map<Map<String, Double>, double[]> signatureCache = new ConcurrentHashMap<Map<String, Double>, double[]>();
+	//rank: the score of the selected entity of each disambiguated mention, written
+	//by the mention workers when mentionThreads > 1.
+	Map<Mention, Double> scores = new ConcurrentHashMap<Mention, Double>();
+
+	//the time budget of the document in nanoseconds, and when it runs out (System.nanoTime()).
+	long budget = 0;
+	long deadline = Long.MAX_VALUE;
+	//the cheapest strategy used so far.
+	int level = LEVEL_FULL;
+
+	public LinkingContext(Tokenizer toker, TFIDF3x tfidfIndex) {
+		mentionCtxCache = new MentionContextCache(WNEDConfig.contextOption, toker, tfidfIndex);
+		entityCtxCache = new EntityContextCache(tfidfIndex);
+	}
+
+	/**
+	 * Start the clock of the document, if it has a deadline.
+	 */
+	void startClock() {
+		if (WNEDConfig.docDeadlineMs > 0) {
+			budget = TimeUnit.MILLISECONDS.toNanos(WNEDConfig.docDeadlineMs);
+			deadline = System.nanoTime() + budget;
+		}
+	}
+
+	/**
+	 * @return True if the document has a deadline and it has passed.
+	 */
+	boolean isExpired() {
+		return System.nanoTime() > deadline;
+	}
+
+	/**
+	 * Give a fallback strategy half of the budget, counted from now.
+	 */
+	void extendDeadline() {
+		if (budget > 0)
+			deadline = System.nanoTime() + budget / 2;
+	}
+
+	/**
+	 * Step down to the given level, levels are never raised.
+	 *
+	 * @param level
+	 */
+	void degrade(int level) {
+		if (level > this.level)
+			this.level = level;
+	}
+
+	/**
+	 * @return The strategy used to link the document, one of the LEVEL_* constants.
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	public String getLevelName() {
+		return levelName(level);
+	}
+
+	public static String levelName(int level) {
+		return LEVEL_NAMES[level];
+	}
+
+	/**
+	 * Use a document annotated by the caller (its sentences and tokens, and
+	 * possibly mentions) instead of annotating the text.
+	 *
+	 * @param document
+	 */
+	public void setDocument(Document document) {
+		this.document = document;
+	}
+
+	/**
+	 * Give the entity types (e.g. PER, ORG, LOC or MISC) of the mentions to be
+	 * linked, used when the NER does not run.
+	 *
+	 * @param types In the same order as the mentions, null entries if unknown.
+	 */
+	public void setMentionTypes(List<String> types) {
+		this.mentionTypes = types;
+	}
+
+	public Map<Mention, String> getTruth() {
+		return truth;
+	}
+
+	/**
+	 * @return The mentions of the document, in the order of the linking results.
+	 */
+	public List<Mention> getMentions() {
+		return mentions;
+	}
+
+	/**
+	 * @param m
+	 * @return The score of the entity linked to the mention (see Feature.score()),
+	 *         1.0 if the mention had only one candidate left.
+	 */
+	public double getScore(Mention m) {
+		Double score = scores.get(m);
+		return score == null ? 1.0 : score;
+	}
+
+	public MentionContextCache getMentionContextCache() {
+		return mentionCtxCache;
+	}
+
+	public EntityContextCache getEntityContextCache() {
+		return entityCtxCache;
+	}
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import ca.ualberta.entitylinking.config.WNEDConfig;
+
+/**
+ * Links documents in four pipelined stages: annotate, candidates, graph and rank.
+ *
+ * Each stage has its own pool of workers, and the stages are connected by bounded
+ * queues, so while one document is being ranked the next ones can be in candidate
+ * selection and NER. A full queue blocks the stage feeding it (and eventually
+ * submit()), which keeps the number of documents in flight bounded.
+ *
+ * The depth of each queue and the throughput of each stage are logged by
+ * logStats(), and can be used to balance the pool sizes (annotateThreads,
+ * candidateThreads, graphThreads and rankThreads in the configuration).
+ */
+public class LinkingPipeline {
+	private static Logger LOGGER = LogManager.getLogger(LinkingPipeline.class);
+
+	//marks the end of the input of a worker.
+	private static final Job POISON = new Job();
+
+	/**
+	 * A document going through the pipeline.
+	 */
+	private static class Job {
+		LinkingContext ctx = null;
+		String content = null;
+		List<String> names = null;
+		List<Integer> offsets = null;
+		List<String> wikiNames = null;
+
+		//set once a stage finds that there is nothing to link.
+		boolean finished = false;
+		List<String> results = null;
+		CompletableFuture<List<String>> future = new CompletableFuture<List<String>>();
+	}
+
+	/**
+	 * A stage of the pipeline, with its input queue and workers.
+	 */
+	private abstract class Stage {
+		String name = null;
+		BlockingQueue<Job> queue = null;
+		Stage next = null;
+		List<Thread> workers = new ArrayList<Thread>();
+
+		AtomicLong processed = new AtomicLong();
+		//the total time spent by the workers on documents, in nanoseconds.
+		AtomicLong busyTime = new AtomicLong();
+		AtomicInteger alive = new AtomicInteger();
+
+		Stage(String name, int numThreads, int queueSize) {
+			this.name = name;
+			this.queue = new ArrayBlockingQueue<Job>(queueSize);
+
+			for (int i = 0; i < Math.max(numThreads, 1); i++) {
+				Thread t = new Thread(new Runnable() {
+					public void run() {
+						work();
+					}
+				}, "wned-" + name + "-" + i);
+				t.setDaemon(true);
+				workers.add(t);
+			}
+		}
+
+		void start() {
+			alive.set(workers.size());
+			for (Thread t : workers)
+				t.start();
+		}
+
+		/**
+		 * Process one document, the results are stored in its context.
+		 */
+		abstract void process(Job job);
+
+		private void work() {
+			try {
+				while (true) {
+					Job job = queue.take();
+					if (job == POISON)
+						break;
+
+					if (!job.finished) {
+						long begin = System.nanoTime();
+						try {
+							process(job);
+						} catch (Exception e) {
+							LOGGER.error("[" + name + "] failed to process a document");
+							e.printStackTrace();
+							job.future.completeExceptionally(e);
+							continue;
+						} finally {
+							busyTime.addAndGet(System.nanoTime() - begin);
+							processed.incrementAndGet();
+						}
+					}
+
+					forward(job);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			//the last worker of a stage shuts down the next one.
+			if (alive.decrementAndGet() == 0 && next != null)
+				next.stop();
+		}
+
+		private void forward(Job job) throws InterruptedException {
+			if (next != null) {
+				next.queue.put(job);
+			} else {
+				job.future.complete(job.results);
+				if (completed.incrementAndGet() % 100 == 0)
+					logStats();
+			}
+		}
+
+		void stop() {
+			try {
+				for (int i = 0; i < workers.size(); i++)
+					queue.put(POISON);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private SemanticSignatureEL linker = null;
+	private List<Stage> stages = new ArrayList<Stage>();
+	private long startTime = 0;
+	private AtomicLong completed = new AtomicLong();
+
+	public LinkingPipeline(SemanticSignatureEL linker) {
+		this.linker = linker;
+		int queueSize = WNEDConfig.pipelineQueueSize;
+
+		stages.add(new Stage("annotate", WNEDConfig.annotateThreads, queueSize) {
+			void process(Job job) {
+				LinkingPipeline.this.linker.annotate(job.ctx, job.content,
+						job.names, job.offsets, job.wikiNames);
+				//the text is not needed any more.
+				job.content = null;
+			}
+		});
+		stages.add(new Stage("candidates", WNEDConfig.candidateThreads, queueSize) {
+			void process(Job job) {
+				if (!LinkingPipeline.this.linker.selectCandidates(job.ctx))
+					job.finished = true;
+			}
+		});
+		stages.add(new Stage("graph", WNEDConfig.graphThreads, queueSize) {
+			void process(Job job) {
+				LinkingPipeline.this.linker.buildGraph(job.ctx);
+			}
+		});
+		stages.add(new Stage("rank", WNEDConfig.rankThreads, queueSize) {
+			void process(Job job) {
+				job.results = LinkingPipeline.this.linker.rank(job.ctx);
+				job.finished = true;
+			}
+		});
+
+		for (int i = 0; i < stages.size() - 1; i++)
+			stages.get(i).next = stages.get(i + 1);
+
+		startTime = System.nanoTime();
+		for (Stage stage : stages)
+			stage.start();
+	}
+
+	/**
+	 * Submit a document to the pipeline. Blocks while the first stage is full.
+	 *
+	 * @param ctx A fresh context for the document, it holds the linking details
+	 *            (e.g. scores) once the document is linked.
+	 * @param content The text of the document.
+	 * @param names The surface names of the mentions.
+	 * @param offsets The character offsets of the mentions.
+	 * @param wikiNames The true entities of the mentions, used for logging only. Can be null.
+	 * @return The linked entities, in the same order as the given mentions.
+	 */
+	public CompletableFuture<List<String>> submit(LinkingContext ctx, String content, List<String> names,
+			List<Integer> offsets, List<String> wikiNames) {
+		Job job = new Job();
+		job.ctx = ctx;
+		job.content = content;
+		job.names = names;
+		job.offsets = offsets;
+		job.wikiNames = wikiNames;
+
+		try {
+			stages.get(0).queue.put(job);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			job.future.completeExceptionally(e);
+		}
+
+		return job.future;
+	}
+
+	/**
+	 * Stop the pipeline once the submitted documents are linked.
+	 */
+	public void shutdown() {
+		stages.get(0).stop();
+		for (Stage stage : stages) {
+			for (Thread t : stage.workers) {
+				try {
+					t.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		logStats();
+	}
+
+	/**
+	 * @param stage The index of the stage.
+	 * @return The number of documents waiting for the stage.
+	 */
+	public int queueDepth(int stage) {
+		return stages.get(stage).queue.size();
+	}
+
+	/**
+	 * @param stage The index of the stage.
+	 * @return The number of documents processed by the stage per second of wall time.
+	 */
+	public double throughput(int stage) {
+		double elapsed = (System.nanoTime() - startTime) / 1e9;
+		return elapsed > 0 ? stages.get(stage).processed.get() / elapsed : 0.0;
+	}
+
+	/**
+	 * Log the queue depth, throughput and utilization of each stage. A stage with
+	 * a deep input queue and busy workers is the one that needs more threads.
+	 */
+	public void logStats() {
+		double elapsed = (System.nanoTime() - startTime) / 1e9;
+		StringBuilder sb = new StringBuilder();
+		sb.append("[pipeline] completed=" + completed.get());
+		for (int i = 0; i < stages.size(); i++) {
+			Stage stage = stages.get(i);
+			double busy = stage.busyTime.get() / 1e9;
+			double util = elapsed > 0 ? busy / (elapsed * stage.workers.size()) : 0.0;
+			sb.append(String.format(" | %s: queue=%d, threads=%d, docs=%d, %.2f docs/s, busy=%.0f%%",
+					stage.name, stage.queue.size(), stage.workers.size(),
+					stage.processed.get(), throughput(i), util * 100));
+		}
+
+		LOGGER.info(sb.toString());
+	}
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import ca.ualberta.entitylinking.common.data.SurfaceForm;
+import ca.ualberta.entitylinking.config.WNEDConfig;
+import ca.ualberta.entitylinking.utils.ELUtils;
+import ca.ualberta.entitylinking.utils.Metrics;
+
+/**
+ * An HTTP/JSON front end of a (warm) SemanticSignatureEL.
+ *
+ * POST /link with a body like
+ * <pre>
+ * {"text": "...", "markings": [{"text": "Edmonton", "offset": 10, "length": 8, "type": "LOC"}, ...]}
+ * </pre>
+ * (the type is optional, and only used when the NER is off, see useNER)
+ * returns the markings with their linked entity and score
+ * <pre>
+ * {"level": "full", "annotations": [{"text": "Edmonton", "offset": 10, "length": 8, "entity": "Edmonton", "score": 0.8}, ...]}
+ * </pre>
+ * where entity is null for NIL, and level is the strategy used within the time
+ * budget of the document (see LinkingContext). GET /health returns 200 once the server is up, and
+ * GET /metrics returns the latency histograms and counters (see Metrics).
+ *
+ * At most serverMaxConcurrent requests are linked at the same time, and up to
+ * serverQueueSize more wait for their turn; the server answers 503 beyond that.
+ * A request that is not answered within its time (see await()) gets a 504.
+ * /health and /metrics are answered by the HTTP threads, which never wait for
+ * the linking.
+ */
+public class LinkingServer {
+	private static Logger LOGGER = LogManager.getLogger(LinkingServer.class);
+
+	/**
+	 * The JSON body of a request.
+	 */
+	static class LinkRequest {
+		String text = null;
+		List<SurfaceForm> markings = null;
+	}
+
+	/**
+	 * A linked marking in the JSON response.
+	 */
+	static class Annotation {
+		String text = null;
+		int offset = 0;
+		int length = 0;
+		String entity = null;
+		Double score = null;
+	}
+
+	static class LinkResponse {
+		//the strategy the document was linked with, see LinkingContext.
+		String level = null;
+		List<Annotation> annotations = new ArrayList<Annotation>();
+	}
+
+	static class ErrorResponse {
+		String error = null;
+
+		ErrorResponse(String error) {
+			this.error = error;
+		}
+	}
+
+	/**
+	 * A request being linked.
+	 */
+	private static class Pending {
+		LinkRequest request = null;
+		LinkingContext ctx = null;
+		List<SurfaceForm> markings = new ArrayList<SurfaceForm>();
+		List<String> names = new ArrayList<String>();
+		List<Integer> offsets = new ArrayList<Integer>();
+		List<String> types = new ArrayList<String>();
+		CompletableFuture<LinkResponse> response = new CompletableFuture<LinkResponse>();
+	}
+
+	private SemanticSignatureEL linker = null;
+	private Gson gson = new Gson();
+
+	//the threads handling the admitted /link requests, up to serverQueueSize + serverMaxConcurrent.
+	private ThreadPoolExecutor requests = null;
+	private Semaphore running = null;
+	private ExecutorService pool = null;
+	private LinkingPipeline pipeline = null;
+	private HttpServer server = null;
+
+	public LinkingServer(SemanticSignatureEL linker) {
+		this.linker = linker;
+		int admitted = WNEDConfig.serverQueueSize + WNEDConfig.serverMaxConcurrent;
+		this.requests = new ThreadPoolExecutor(admitted, admitted, 0L, TimeUnit.MILLISECONDS,
+				new SynchronousQueue<Runnable>());
+		this.running = new Semaphore(WNEDConfig.serverMaxConcurrent);
+
+		if (WNEDConfig.pipeline)
+			pipeline = new LinkingPipeline(linker);
+		else
+			pool = Executors.newFixedThreadPool(WNEDConfig.serverMaxConcurrent);
+	}
+
+	public void start(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext("/link", new HttpHandler() {
+			public void handle(final HttpExchange exchange) throws IOException {
+				Metrics.increment("serverRequests");
+				try {
+					requests.execute(new Runnable() {
+						public void run() {
+							try {
+								handleLink(exchange);
+							} catch (Exception e) {
+								LOGGER.error("Failed to answer a request", e);
+							} finally {
+								exchange.close();
+							}
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					Metrics.increment("serverRejected");
+					send(exchange, 503, gson.toJson(new ErrorResponse("Too many requests, try again later")));
+				}
+			}
+		});
+		server.createContext("/health", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				send(exchange, 200, "{\"status\":\"ok\"}");
+			}
+		});
+		server.createContext("/metrics", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				send(exchange, 200, "text/plain; charset=utf-8", Metrics.report());
+			}
+		});
+		//the handlers only hand the /link requests over, so two threads are enough.
+		server.setExecutor(Executors.newFixedThreadPool(2));
+		server.start();
+
+		LOGGER.info(ELUtils.currentTime() + "Linking server listening on port " + port);
+	}
+
+	private void handleLink(HttpExchange exchange) throws IOException {
+		if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+			send(exchange, 405, gson.toJson(new ErrorResponse("POST a JSON document to /link")));
+			return;
+		}
+
+		LinkRequest request = null;
+		try {
+			request = gson.fromJson(new InputStreamReader(exchange.getRequestBody(),
+					StandardCharsets.UTF_8), LinkRequest.class);
+		} catch (JsonParseException e) {
+			send(exchange, 400, gson.toJson(new ErrorResponse("Malformed JSON: " + e.getMessage())));
+			return;
+		}
+
+		if (request == null || request.text == null || request.markings == null) {
+			send(exchange, 400, gson.toJson(new ErrorResponse("Both text and markings are required")));
+			return;
+		}
+
+		Pending pending = new Pending();
+		pending.request = request;
+		for (SurfaceForm marking : request.markings) {
+			if (marking == null || marking.text == null || marking.text.isEmpty())
+				continue;
+
+			pending.markings.add(marking);
+			pending.names.add(marking.text);
+			pending.offsets.add(marking.offset);
+			pending.types.add(marking.type);
+		}
+
+		long begin = System.nanoTime();
+		try {
+			LinkResponse response = await(pending, begin);
+			Metrics.time("serverRequest", begin);
+			send(exchange, 200, gson.toJson(response));
+		} catch (TimeoutException e) {
+			Metrics.increment("serverTimeouts");
+			send(exchange, 504, gson.toJson(new ErrorResponse("Linking timed out")));
+		} catch (Exception e) {
+			LOGGER.error("Failed to link a request", e);
+			send(exchange, 500, gson.toJson(new ErrorResponse("Linking failed")));
+		}
+	}
+
+	/**
+	 * Link a request, and wait for its response. A request waits at most
+	 * serverTimeoutMs in all, and with a document deadline (docDeadlineMs), at
+	 * most three times the deadline once it is being linked: the budget, half of
+	 * it for each fallback of the rank stage, and as much for the other stages.
+	 *
+	 * @param begin When the request was received (System.nanoTime()).
+	 * @return The response.
+	 * @throws TimeoutException If the request is not answered in time.
+	 */
+	private LinkResponse await(Pending pending, long begin) throws Exception {
+		long limit = begin + TimeUnit.MILLISECONDS.toNanos(WNEDConfig.serverTimeoutMs);
+		Metrics.record("serverWaiting", running.getQueueLength());
+		if (!running.tryAcquire(Math.max(0, limit - System.nanoTime()), TimeUnit.NANOSECONDS))
+			throw new TimeoutException();
+
+		dispatch(pending);
+		if (WNEDConfig.docDeadlineMs > 0)
+			limit = Math.min(limit, System.nanoTime() + 3 * TimeUnit.MILLISECONDS.toNanos(WNEDConfig.docDeadlineMs));
+
+		return pending.response.get(Math.max(0, limit - System.nanoTime()), TimeUnit.NANOSECONDS);
+	}
+
+	private static void send(HttpExchange exchange, int status, String body) throws IOException {
+		send(exchange, status, "application/json; charset=utf-8", body);
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, String body)
+			throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	/**
+	 * Hand a request to the linking workers (or the pipeline). The caller holds a
+	 * permit of running, released once the request is complete.
+	 */
+	private void dispatch(final Pending pending) {
+		try {
+			pending.ctx = linker.newContext();
+			pending.ctx.setMentionTypes(pending.types);
+
+			if (pipeline != null) {
+				CompletableFuture<List<String>> future = pipeline.submit(pending.ctx, pending.request.text,
+						pending.names, pending.offsets, null);
+				future.whenComplete(new BiConsumer<List<String>, Throwable>() {
+					public void accept(List<String> results, Throwable t) {
+						complete(pending, results, t);
+					}
+				});
+			} else {
+				pool.submit(new Runnable() {
+					public void run() {
+						List<String> results = null;
+						Throwable error = null;
+						try {
+							results = linker.linkDocument(pending.ctx, pending.request.text,
+									pending.names, pending.offsets, null);
+						} catch (Throwable t) {
+							error = t;
+						}
+						complete(pending, results, error);
+					}
+				});
+			}
+		} catch (Throwable t) {
+			complete(pending, null, t);
+		}
+	}
+
+	/**
+	 * Build the response of a linked request, and release its permit of running.
+	 * The response is always completed, normally or exceptionally.
+	 */
+	private void complete(Pending pending, List<String> results, Throwable error) {
+		try {
+			if (error != null) {
+				pending.response.completeExceptionally(error);
+				return;
+			}
+
+			LinkResponse response = new LinkResponse();
+			response.level = pending.ctx.getLevelName();
+			for (int i = 0; i < pending.markings.size(); i++) {
+				SurfaceForm marking = pending.markings.get(i);
+				Annotation annotation = new Annotation();
+				annotation.text = marking.text;
+				annotation.offset = marking.offset;
+				annotation.length = marking.length;
+
+				if (results != null && !results.isEmpty() && results.get(i) != null) {
+					annotation.entity = results.get(i);
+					annotation.score = pending.ctx.getScore(pending.ctx.getMentions().get(i));
+				}
+
+				response.annotations.add(annotation);
+			}
+
+			pending.response.complete(response);
+		} catch (Throwable t) {
+			pending.response.completeExceptionally(t);
+		} finally {
+			running.release();
+		}
+	}
+
+	/**
+	 * @param args
+	 * 		args[0] is the config file: e.g. el.config
+	 */
+	public static void main(String[] args) throws IOException {
+		SemanticSignatureEL linker = new SemanticSignatureEL(args[0]);
+		new LinkingServer(linker).start(WNEDConfig.serverPort);
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import ca.ualberta.entitylinking.common.data.Entity;
+import ca.ualberta.entitylinking.common.data.Mention;
+import ca.ualberta.entitylinking.config.WNEDConfig;
+import ca.ualberta.entitylinking.utils.Metrics;
+
+/**
+ * Mention deduplication (see dedupMentions). Long documents repeat the same
+ * names, so the mentions are grouped into classes, and only one representative
+ * of each class is linked. The decision is then copied to the other members.
+ *
+ * The mentions are grouped in two steps:
+ * <ol>
+ * <li>before the candidate selection, by (resolved) entity name and type, and by
+ * context unless the context is the whole document. The members of a class
+ * get the same candidates, so they are selected for the representative only.</li>
+ * <li>after the candidate selection, the classes with the same normalized name,
+ * type and set of candidates are merged, unless dedupKeepContext is set and
+ * their contexts differ.</li>
+ * </ol>
+ * While the document is linked, ctx.mentions holds the representatives only.
+ */
+class MentionClasses {
+	private static Logger LOGGER = LogManager.getLogger(MentionClasses.class);
+
+	/**
+	 * Group the mentions of the document by name, type and context, and keep the
+	 * representatives in ctx.mentions.
+	 *
+	 * @param ctx
+	 */
+	static void group(LinkingContext ctx) {
+		boolean withContext = WNEDConfig.contextOption != WNEDConfig.DOC_CTX;
+		Map<List<Object>, Mention> reps = new HashMap<List<Object>, Mention>();
+
+		ctx.allMentions = ctx.mentions;
+		ctx.duplicates = new HashMap<Mention, List<Mention>>();
+		List<Mention> mentions = new ArrayList<Mention>();
+		for (Mention m : ctx.allMentions) {
+			List<Object> key = key(ctx, m, false, withContext);
+			Mention rep = key == null ? null : reps.get(key);
+			if (rep == null) {
+				if (key != null)
+					reps.put(key, m);
+				mentions.add(m);
+				continue;
+			}
+
+			addDuplicate(ctx, rep, m);
+		}
+
+		ctx.mentions = mentions;
+	}
+
+	/**
+	 * Merge the classes of the representatives with the same normalized name,
+	 * type and candidates (and context, with dedupKeepContext).
+	 *
+	 * @param ctx
+	 * @param candMap The candidates of the representatives.
+	 */
+	static void merge(LinkingContext ctx, Map<Mention, Map<Entity, Double>> candMap) {
+		boolean withContext = WNEDConfig.dedupKeepContext && WNEDConfig.contextOption != WNEDConfig.DOC_CTX;
+		Map<List<Object>, Mention> reps = new HashMap<List<Object>, Mention>();
+
+		List<Mention> mentions = new ArrayList<Mention>();
+		for (Mention m : ctx.mentions) {
+			List<Object> key = key(ctx, m, true, withContext);
+			if (key != null) {
+				Map<Entity, Double> candidates = candMap.get(m);
+				key.add(candidates == null ? null : candidates.keySet());
+			}
+
+			Mention rep = key == null ? null : reps.get(key);
+			if (rep == null) {
+				if (key != null)
+					reps.put(key, m);
+				mentions.add(m);
+				continue;
+			}
+
+			addDuplicate(ctx, rep, m);
+			List<Mention> members = ctx.duplicates.remove(m);
+			if (members != null) {
+				for (Mention member : members)
+					addDuplicate(ctx, rep, member);
+			}
+			candMap.remove(m);
+		}
+
+		ctx.mentions = mentions;
+		Metrics.record("mentionClasses", mentions.size());
+		Metrics.add("duplicateMentions", ctx.allMentions.size() - mentions.size());
+	}
+
+	/**
+	 * Copy the decision of each representative to the members of its class, and
+	 * restore all the mentions in ctx.mentions.
+	 *
+	 * @param ctx
+	 */
+	static void expand(LinkingContext ctx) {
+		if (ctx.allMentions == null)
+			return;
+
+		for (Map.Entry<Mention, List<Mention>> e : ctx.duplicates.entrySet()) {
+			Mention rep = e.getKey();
+			Map<Entity, Double> candidates = ctx.candMap == null ? null : ctx.candMap.get(rep);
+			Double score = ctx.scores.get(rep);
+
+			for (Mention m : e.getValue()) {
+				if (candidates != null)
+					ctx.candMap.put(m, new LinkedHashMap<Entity, Double>(candidates));
+				if (score != null)
+					ctx.scores.put(m, score);
+
+				if (candidates != null && candidates.size() == 1)
+					LOGGER.info("[result]" + m.getName() + "[" + ctx.truth.get(m) + "]" + " : "
+							+ candidates.keySet().iterator().next().getName() + " (same as " + rep.getName() + ")");
+			}
+		}
+
+		ctx.mentions = ctx.allMentions;
+		ctx.allMentions = null;
+		ctx.duplicates = null;
+	}
+
+	private static void addDuplicate(LinkingContext ctx, Mention rep, Mention m) {
+		List<Mention> members = ctx.duplicates.get(rep);
+		if (members == null) {
+			members = new ArrayList<Mention>();
+			ctx.duplicates.put(rep, members);
+		}
+
+		members.add(m);
+	}
+
+	/**
+	 * @return The key of the class of the mention, null if it is not to be grouped.
+	 */
+	private static List<Object> key(LinkingContext ctx, Mention m, boolean normalize, boolean withContext) {
+		if (m == null || m.getEntity() == null || m.getEntity().getName() == null)
+			return null;
+
+		String name = m.getEntity().getName().trim();
+		if (normalize)
+			name = name.replaceAll("\\s+", " ").toLowerCase();
+
+		List<Object> key = new ArrayList<Object>();
+		key.add(name);
+		key.add(m.getEntity().getType());
+		if (withContext)
+			key.add(ctx.mentionCtxCache.getContext(m));
+
+		return key;
+	}
+}
@@ -24,10 +24,19 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -39,13 +48,12 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
 import ca.ualberta.entitylinking.common.data.SurfaceForm;
-import ca.ualberta.entitylinking.graph.similarity.context.EntityContextCache;
-import ca.ualberta.entitylinking.graph.similarity.context.MentionContextCache;
 import ca.ualberta.entitylinking.graph.similarity.measure.SimilarityMeasure;
 import ca.ualberta.entitylinking.utils.*;
 import ca.ualberta.entitylinking.disambiguation.L2RPredictor;
 import ca.ualberta.entitylinking.disambiguation.NILPredictor;
 import ca.ualberta.entitylinking.experiment.Evaluation;
+import it.unimi.dsi.webgraph.ImmutableGraph;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.w3c.dom.Element;
@@ -53,13 +61,15 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 import ca.ualberta.entitylinking.graph.GraphUtils;
+import ca.ualberta.entitylinking.graph.Triple;
 import ca.ualberta.entitylinking.graph.WeightedGraph;
 import ca.ualberta.entitylinking.graph.DirectedGraph;
 import ca.ualberta.entitylinking.graph.UndirectedGraph;
 import ca.ualberta.entitylinking.graph.SubGraphGenerator;
+import ca.ualberta.entitylinking.graph.algorithms.GlobalSignatureStore;
 import ca.ualberta.entitylinking.graph.algorithms.PersonalizedPageRank;
+import ca.ualberta.entitylinking.graph.algorithms.SemanticSignature;
 import ca.ualberta.entitylinking.graph.algorithms.UnweightedPersonalizedPageRank;
-import ca.ualberta.entitylinking.graph.algorithms.WeightedPersonalizedPageRank;
 import ca.ualberta.entitylinking.common.data.Document;
 import ca.ualberta.entitylinking.common.data.Entity;
 import ca.ualberta.entitylinking.common.data.Mention;
@@ -75,7 +85,13 @@ import ca.ualberta.entitylinking.utils.similarity.VectorSimilarity;
 
 public class SemanticSignatureEL {
 	private static Logger LOGGER = LogManager.getLogger(SemanticSignatureEL.class);
-    public static DecimalFormat df = new DecimalFormat("#.###");
+    //DecimalFormat is not thread-safe, so every linking thread gets its own.
+    private static ThreadLocal<DecimalFormat> df = new ThreadLocal<DecimalFormat>() {
+        @Override
+        protected DecimalFormat initialValue() {
+            return new DecimalFormat("#.###");
+        }
+    };
 
 	protected StanfordNER ner = null;
 	protected OrthoMatcherCoref orthoMatcher = null;
@@ -85,20 +101,18 @@ public class SemanticSignatureEL {
 
     private SubGraphGenerator gg = null;
     private WeightedGraph g = null;
+    //the precomputed signatures of popular entities, null if not used (see globalSignatures).
+    private GlobalSignatureStore globalSigs = null;
     
+    //disambiguates the mentions of a document concurrently, see mentionThreads.
+    private ForkJoinPool mentionPool = null;
+
     private L2RPredictor predictor = null;
     private NILPredictor nilPredor = null;
     
 	public double alpha = 0.0;
 	public double beta = 0.3;
 
-	//cache the context of mentions for efficiency.
-    MentionContextCache mentionCtxCache = null;
-    //cache the context of entities for efficiency.
-    EntityContextCache entityCtxCache = null;
-
-	private Map<Mention, String> truth = new HashMap<Mention, String>();
-
     public SemanticSignatureEL() {
         this("el.config");
     }
@@ -108,15 +122,27 @@ public class SemanticSignatureEL {
 
         LOGGER.info(ELUtils.currentTime() + "Hello");
 
-        //Create the NER and co-reference resolution components.
-		orthoMatcher = new OrthoMatcherCoref();
-		Set<String> allowedEntityTypes = new HashSet<String>();
-		allowedEntityTypes.add(Entity.PERSON);
-		allowedEntityTypes.add(Entity.ORGANIZATION);
-		allowedEntityTypes.add(Entity.LOCATION);
-		allowedEntityTypes.add(Entity.MISC);
-		ner = new StanfordNER(allowedEntityTypes);
-        LOGGER.info(ELUtils.currentTime() + "Done with loading StanfordNER and GATE OrthoMatcher");
+        //Create the NER and co-reference resolution components (if used), while
+        //the knowledge base is loaded.
+		Thread nlpLoader = new Thread(new Runnable() {
+			public void run() {
+				if (WNEDConfig.useCoref) {
+					orthoMatcher = new OrthoMatcherCoref();
+			        LOGGER.info(ELUtils.currentTime() + "Done with loading GATE OrthoMatcher");
+				}
+
+				if (WNEDConfig.useNER) {
+					Set<String> allowedEntityTypes = new HashSet<String>();
+					allowedEntityTypes.add(Entity.PERSON);
+					allowedEntityTypes.add(Entity.ORGANIZATION);
+					allowedEntityTypes.add(Entity.LOCATION);
+					allowedEntityTypes.add(Entity.MISC);
+					ner = new StanfordNER(allowedEntityTypes);
+			        LOGGER.info(ELUtils.currentTime() + "Done with loading StanfordNER");
+				}
+			}
+		}, "wned-nlp-loader");
+		nlpLoader.start();
 
         //Load the Knowledge base graph.
 		if (WNEDConfig.directedGraph)
@@ -128,6 +154,15 @@ public class SemanticSignatureEL {
 		gg = new SubGraphGenerator(g);
         LOGGER.info(ELUtils.currentTime() + "Done with loading graph");
 
+        if (!WNEDConfig.globalSignatures.isEmpty()) {
+        	try {
+        		globalSigs = GlobalSignatureStore.open(WNEDConfig.globalSignatures);
+        		LOGGER.info(ELUtils.currentTime() + "Done with mapping " + globalSigs.size() + " global signatures");
+        	} catch (Exception e) {
+        		LOGGER.warn("Cannot open the global signatures " + WNEDConfig.globalSignatures, e);
+        	}
+        }
+
         //Candidate selection
 		cs = new CandidateSelectionLucene();
         LOGGER.info(ELUtils.currentTime() + "Done with loading lucene index");
@@ -143,13 +178,29 @@ public class SemanticSignatureEL {
             tfidfIndex = new TFIDF3x();
             LOGGER.info(ELUtils.currentTime() + "Done with loading the TFIDF index");
 			toker = new Tokenizer();
-			
-            mentionCtxCache = new MentionContextCache(WNEDConfig.contextOption, toker, tfidfIndex);
-            entityCtxCache = new EntityContextCache(tfidfIndex);
-
         } catch (Exception e) {
 			e.printStackTrace();
 		}
+
+		if (WNEDConfig.mentionThreads > 1 && !WNEDConfig.useIterative)
+			mentionPool = new ForkJoinPool(WNEDConfig.mentionThreads);
+
+		try {
+			nlpLoader.join();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+        LOGGER.info(ELUtils.currentTime() + "Ready");
+	}
+
+	/**
+	 * Create the state for linking a new document. Contexts are cheap, and each
+	 * document (or thread) should use its own.
+	 *
+	 * @return A fresh linking context.
+	 */
+	public LinkingContext newContext() {
+		return new LinkingContext(toker, tfidfIndex);
 	}
 
 	/**
@@ -162,11 +213,12 @@ public class SemanticSignatureEL {
 	 * @param e
 	 * @return Context similarity.
 	 */
-	private double localCompatibilityWithUnambiguous(Mention m, Entity e, Map<Mention, Map<Entity, Double>> candMap) {
+	private double localCompatibilityWithUnambiguous(LinkingContext ctx, Mention m, Entity e,
+			Map<Mention, Map<Entity, Double>> candMap) {
 		//Mention context;
-		Map<String, Float> mentionCtx = mentionCtxCache.getContext(m);
+		Map<String, Float> mentionCtx = ctx.mentionCtxCache.getContext(m);
 		//Entity context;
-		Map<String, Float> entityCtx = entityCtxCache.getContext(e);
+		Map<String, Float> entityCtx = ctx.entityCtxCache.getContext(e);
 
 		//Check if unambiguous mentions exist in the document.
 		//We can search from only the sentence containing m or from the whole document.
@@ -190,7 +242,7 @@ public class SemanticSignatureEL {
 
 		//Enrich the mention context with the context of unambiguous mentions.
 		for (Entity entity : unambigEntities) {
-			Map<String, Float> context = entityCtxCache.getContext(entity);
+			Map<String, Float> context = ctx.entityCtxCache.getContext(entity);
 
 			if (mentionCtx != null && context != null)
 				mentionCtx.putAll(context);
@@ -205,7 +257,7 @@ public class SemanticSignatureEL {
      * @param candMap
      * @return The list of entities of unambiguous mentions.
      */
-    private Map<String, Double> getUnambiguousEntities(
+    private Map<String, Double> getUnambiguousEntities(LinkingContext ctx,
             Map<Mention, Map<Entity, Double>> candMap, WeightCache weightCache) {
 
         Map<String, Double> ret = new HashMap<String, Double>();
@@ -232,7 +284,7 @@ public class SemanticSignatureEL {
             Entity maxPriorEnt = null, maxSimEnt = null;
             for (Entity ent : candidates.keySet()) {
                 prior = candidates.get(ent);
-                sim = SimilarityMeasure.mentionEntitySimilarity(m, ent, mentionCtxCache, entityCtxCache);
+                sim = SimilarityMeasure.mentionEntitySimilarity(m, ent, ctx.mentionCtxCache, ctx.entityCtxCache);
 
                 if (prior > maxPrior) {
                     maxPrior = prior;
@@ -266,7 +318,7 @@ public class SemanticSignatureEL {
      * @param candMap
      * @return Entities with their weighting.
      */
-	private Map<String, Double> targetOrigDoc(Map<Mention, Map<Entity, Double>> candMap) {
+	private Map<String, Double> targetOrigDoc(LinkingContext ctx, Map<Mention, Map<Entity, Double>> candMap) {
 		Map<String, Double> map = new HashMap<String, Double>();
 		Map<Entity, Double> candidates = null;
 
@@ -286,7 +338,7 @@ public class SemanticSignatureEL {
 				} else if (WNEDConfig.ePrefStreg == WNEDConfig.PrefStrategy.PRIOR_PROB) {
 					pref = candidates.get(e);
 				} else if (WNEDConfig.ePrefStreg == WNEDConfig.PrefStrategy.CTX_SIM) {
-					pref = SimilarityMeasure.mentionEntitySimilarity(m, e, mentionCtxCache, entityCtxCache);
+					pref = SimilarityMeasure.mentionEntitySimilarity(m, e, ctx.mentionCtxCache, ctx.entityCtxCache);
 				}
 				
 				sum += pref;
@@ -356,7 +408,7 @@ public class SemanticSignatureEL {
      */
     private void cleanupCandidates(Map<Entity, Double> candidates, Set<String> entities,
                                    Map<String, Integer> e2id,
-                                   Map<Integer, List<Double>> ranks) {
+                                   Map<Integer, SemanticSignature> ranks) {
 
         if (candidates == null || candidates.size() <= 1)
             return;
@@ -373,13 +425,18 @@ public class SemanticSignatureEL {
         }
     }
 
-    private class WeightCache {
+    class WeightCache {
+        LinkingContext ctx = null;
         Map<Entity, Double> randomWeightCache = new HashMap<Entity, Double>();
         Map<Mention, Double> prefWeightCache = new HashMap<Mention, Double>();
         Map<Mention, Map<Entity, Double>> localSimMap =
                 new HashMap<Mention, Map<Entity, Double>>();
         Map<Mention, Map<Entity, Double>> priorProbMap = null;
 
+        public WeightCache(LinkingContext ctx) {
+            this.ctx = ctx;
+        }
+
         public void prepareWeightCache(WNEDConfig.PrefStrategy pref,
                                        List<Mention> mentions,
                                        Map<Mention, Map<Entity, Double>> candMap) {
@@ -427,7 +484,7 @@ public class SemanticSignatureEL {
                 } else {
                     for (Entity e : candidates.keySet()) {
                         //compute the context similarity with the candidate.
-                        double local = SimilarityMeasure.mentionEntitySimilarity(m, e, mentionCtxCache, entityCtxCache);
+                        double local = SimilarityMeasure.mentionEntitySimilarity(m, e, ctx.mentionCtxCache, ctx.entityCtxCache);
                         simMap.put(e,  local);
                     }
                 }
@@ -463,58 +520,604 @@ public class SemanticSignatureEL {
         }
     }
 
-    /**
-     * Use an iterative approach for the entity linking task.
-     *
-     * @param mentions
-     * @return
-     */
-    private List<String> linkingImplUnifiedUniterative(List<Mention> mentions) {
+	/**
+	 * Stage 1: annotate the document, and create its mentions.
+	 *
+	 * @param ctx The per-document linking state.
+	 * @param content The text of the document.
+	 * @param names The surface names of the mentions.
+	 * @param offsets The character offsets of the mentions.
+	 * @param wikiNames The true entities of the mentions (null entries if unknown),
+	 *                  used for logging only. Can be null.
+	 */
+	void annotate(LinkingContext ctx, String content, List<String> names,
+			List<Integer> offsets, List<String> wikiNames) {
+		long begin = 0;
+
+		ctx.startClock();
+
+		// Annotate document. Without the NER, the given mentions are added to the
+		// tokenized (or caller annotated) document.
+		begin = System.nanoTime();
+		Document doc = ctx.document;
+		if (doc == null && ner != null) {
+			doc = DocumentUtils.annotateDocument(content, ner, orthoMatcher);
+		} else {
+			if (doc == null)
+				doc = DocumentUtils.tokenizeDocument(content);
+			else if (doc.getOriginalText() == null)
+				doc.setOriginalText(content);
+
+			DocumentUtils.addMentions(doc, names, offsets, ctx.mentionTypes);
+			if (orthoMatcher != null)
+				orthoMatcher.findCoreferences(doc);
+		}
+		ctx.document = null;
+		Metrics.time("annotate", begin);
+
+		begin = System.nanoTime();
+		Map<Integer, Mention> idxMenMap = DocumentUtils.getIndex(doc);
+		Metrics.time("getIndex", begin);
+
+		begin = System.nanoTime();
+		List<Mention> mentions = new ArrayList<Mention>();
+		for (int j = 0; j < names.size(); j++) {
+			Mention m = DocumentUtils.createMention(names.get(j), offsets.get(j), doc, idxMenMap);
+			mentions.add(m);
+			if (wikiNames != null && wikiNames.get(j) != null)
+				ctx.truth.put(m, wikiNames.get(j));
+		}
+		Metrics.time("createMention", begin);
+
+		for (Mention m : mentions)
+			LOGGER.info(m.getName() + "[" + m.getEntity().getType() + "]" + ":" + m.getEntity().getName());
+
+		ELUtils.resolve(mentions);
+		ctx.mentions = mentions;
+
+		Metrics.increment("documents");
+		Metrics.add("mentions", mentions.size());
+	}
+
+	/**
+	 * Stage 2: select the candidates of the mentions, and collect the entities
+	 * for the graph construction.
+	 *
+	 * With dedupMentions, only one mention of each class of repeated mentions is
+	 * linked (see MentionClasses), until the end of the rank stage.
+	 *
+	 * @param ctx The per-document linking state, with the mentions.
+	 * @return False if there is nothing to be linked in the document.
+	 */
+	boolean selectCandidates(LinkingContext ctx) {
+		if (!WNEDConfig.dedupMentions)
+			return selectCandidatesImpl(ctx);
+
+		long begin = System.nanoTime();
+		MentionClasses.group(ctx);
+		Metrics.time("groupMentions", begin);
+
+		boolean ret = selectCandidatesImpl(ctx);
+		if (!ret)
+			MentionClasses.expand(ctx);
+
+		return ret;
+	}
+
+	private boolean selectCandidatesImpl(LinkingContext ctx) {
+		long begin = 0;
+		List<Mention> mentions = ctx.mentions;
+
+		begin = System.nanoTime();
         //Select candidates.
         Map<Mention, Map<Entity, Double>> candMap =
-                CSUtils.selectCandidatesMention(mentions, mentionCtxCache, entityCtxCache, cs);
-        if (candMap == null || candMap.isEmpty())
-            return null;
+				CSUtils.selectCandidatesMention(mentions, ctx.mentionCtxCache, ctx.entityCtxCache, cs);
+		Metrics.time("selectCandidates", begin);
+		if (candMap == null || candMap.isEmpty())
+			return false;
+
+		if (ctx.allMentions != null) {
+			MentionClasses.merge(ctx, candMap);
+			mentions = ctx.mentions;
+		}
+
+		for (Mention m : mentions) {
+			Map<Entity, Double> candidates = candMap.get(m);
+			Metrics.record("candidatesPerMention", candidates == null ? 0 : candidates.size());
+		}
 
-        WeightCache weightCache = new WeightCache();
+		begin = System.nanoTime();
+		WeightCache weightCache = new WeightCache(ctx);
         //Cache the importance of mentions, context similarity and prior probability between mention and entity.
         weightCache.prepareWeightCache(WNEDConfig.mPrefStreg, mentions, candMap);
         weightCache.prepareContextSimCache(mentions, candMap);
         weightCache.preparePriorProbCache(mentions, candMap);
+		Metrics.time("prepareCache", begin);
 
         //Use unambiguous mentions as the initial representation of the document.
         //This step has to be here, since we do some cleanup when we collect the unambiguous entities.
+		begin = System.nanoTime();
         Map<String, Double> unambigEntities = null;
         if (WNEDConfig.useUnambigEntity)
-            unambigEntities = getUnambiguousEntities(candMap, weightCache);
+            unambigEntities = getUnambiguousEntities(ctx, candMap, weightCache);
+		Metrics.time("getUnambiguousEntities", begin);
 
         // Collect all entities for graph construction.
-        Set<String> entities = collectNodes(candMap.keySet(), candMap);
-        if (entities == null)
-            entities = new HashSet<String>();
+		begin = System.nanoTime();
+		Set<String> entities = collectNodes(candMap.keySet(), candMap);
+		Metrics.time("collectNodes", begin);
+
+		if (entities == null || entities.isEmpty()) {
+			//Nothing to rank, the uniterative approach still links the mentions
+			//with an empty graph.
+			if (WNEDConfig.useIterative)
+				return false;
+			if (entities == null)
+				entities = new HashSet<String>();
+		}
 
-        // 2. Construct a graph including all candidate entities and the target Entities.
-        Map<String, Integer> e2id = new HashMap<String, Integer>();
+		ctx.candMap = candMap;
+		ctx.weightCache = weightCache;
+		ctx.unambigEntities = unambigEntities;
+		ctx.entities = entities;
+
+		return true;
+	}
+
+	/**
+	 * Stage 3: construct a graph including all candidate entities and the target entities.
+	 *
+	 * @param ctx The per-document linking state, with the candidates.
+	 */
+	void buildGraph(LinkingContext ctx) {
+		buildGraph(ctx, WNEDConfig.expandLevel);
+	}
+
+	/**
+	 * @param ctx
+	 * @param level The levels of expansion of the graph.
+	 */
+	private void buildGraph(LinkingContext ctx, int level) {
+		long begin = 0;
+
+		begin = System.nanoTime();
+		Map<String, Integer> e2id = new HashMap<String, Integer>();
         PersonalizedPageRank ranker = null;
         
-        if (WNEDConfig.weighted)
-        	ranker = new WeightedPersonalizedPageRank(GraphUtils.buildWeightedGraph(gg, entities, e2id));
-        else
-        	ranker = new UnweightedPersonalizedPageRank(GraphUtils.buildUnweightedGraph(gg, entities, e2id));
-        
-        //3. Compute the semantic signature, and perform the disambiguation.
-        //3.1. Compute the semantic signature of all entities.
-        Map<Integer, List<Double>> entSemSigs =
-                ELUtils.computePageRankParallel(entities, e2id, ranker);
+        if (WNEDConfig.weighted) {
+        	List<Triple> edges = GraphUtils.buildWeightedGraph(gg, ctx.entities, e2id, level);
+        	ranker = PersonalizedPageRank.createWeighted(edges, e2id.size());
+        	Metrics.record("graphEdges", edges == null ? 0 : edges.size());
+
+        	ctx.comparedRankers = null;
+        	if (!WNEDConfig.compareEngines.isEmpty()) {
+        		ctx.comparedRankers = new LinkedHashMap<String, PersonalizedPageRank>();
+        		for (String engine : WNEDConfig.compareEngines) {
+        			PersonalizedPageRank compared = PersonalizedPageRank.createWeighted(engine, edges, e2id.size());
+        			compared.setMetricsPrefix("engine." + engine + ".ppr");
+        			ctx.comparedRankers.put(engine, compared);
+        		}
+        	}
+        } else {
+        	ImmutableGraph graph = GraphUtils.buildUnweightedGraph(gg, ctx.entities, e2id, level);
+        	ranker = new UnweightedPersonalizedPageRank(graph);
+        	Metrics.record("graphEdges", graph.numArcs());
+        }
+
+		Metrics.time("buildGraph", begin);
+		Metrics.record("graphNodes", e2id.size());
 
-        //clear the candidates by removing entities not in the graph.
-        for (Mention m : mentions)
-            cleanupCandidates(candMap.get(m), entities, e2id, entSemSigs);
+		ctx.e2id = e2id;
+		ctx.ranker = ranker;
+		int[] watched = candidateNodes(ctx, e2id);
+		ranker.setWatched(watched);
+		if (ctx.comparedRankers != null) {
+			for (PersonalizedPageRank compared : ctx.comparedRankers.values())
+				compared.setWatched(watched);
+		}
+		//the signatures of the previous graph (if any) are of no use.
+		ctx.signatureCache.clear();
+	}
+
+	/**
+	 * @return The nodes of the candidates of the ambiguous mentions, whose ranking
+	 * 		the adaptive iterations watch (see PersonalizedPageRank.setWatched()).
+	 */
+	private int[] candidateNodes(LinkingContext ctx, Map<String, Integer> e2id) {
+		Set<Integer> nodes = new HashSet<Integer>();
+		for (Map<Entity, Double> candidates : ctx.candMap.values()) {
+			if (candidates == null || candidates.size() < 2)
+				continue;
+
+			for (Entity e : candidates.keySet()) {
+				Integer id = e2id.get(e.getName());
+				if (id != null)
+					nodes.add(id);
+			}
+		}
+
+		int[] array = new int[nodes.size()];
+		int i = 0;
+		for (Integer id : nodes)
+			array[i++] = id;
+
+		return array;
+	}
+
+	/**
+	 * Stage 4: compute the semantic signatures, and perform the disambiguation.
+	 *
+	 * If the document runs out of time, the entity signatures are computed again on
+	 * a graph without expansion, and if that runs out of time too, the mentions are
+	 * linked by their prior probability and context similarity (see LinkingContext).
+	 *
+	 * @param ctx The per-document linking state, with the graph.
+	 * @return The linked entities, in the same order as the mentions.
+	 */
+	List<String> rank(LinkingContext ctx) {
+		Map<Integer, SemanticSignature> entSemSigs = computeEntitySignatures(ctx);
+
+		if (entSemSigs == null && WNEDConfig.expandLevel > 0) {
+			LOGGER.info("[deadline] entity signatures timed out, rebuilding the graph without expansion");
+			ctx.degrade(LinkingContext.LEVEL_NO_EXPANSION);
+			ctx.extendDeadline();
+			buildGraph(ctx, 0);
+			entSemSigs = computeEntitySignatures(ctx);
+		}
+
+		if (entSemSigs == null) {
+			LOGGER.info("[deadline] entity signatures timed out, using prior and context similarity");
+			ctx.degrade(LinkingContext.LEVEL_PRIOR_CONTEXT);
+			disambiguatePriorContext(ctx, ctx.mentions);
+		} else if (ctx.getLevel() >= LinkingContext.LEVEL_NO_EXPANSION) {
+			disambiguateSingleSignature(ctx, ctx.mentions, entSemSigs);
+		} else if (WNEDConfig.useIterative) {
+			disambiguateIterative(ctx, entSemSigs);
+		} else {
+			disambiguateUniterative(ctx, entSemSigs);
+		}
+
+		Metrics.increment("level." + ctx.getLevelName());
+
+		if (ctx.allMentions != null)
+			MentionClasses.expand(ctx);
+
+		List<String> ret = new ArrayList<String>();
+		for (Mention m : ctx.mentions) {
+			Map<Entity, Double> candidates = ctx.candMap.get(m);
+			if (candidates == null || candidates.isEmpty())
+				ret.add(null);
+			else
+				ret.add(candidates.keySet().iterator().next().getName());
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Compute the semantic signature of all entities, and clear the candidates
+	 * by removing entities not in the graph.
+	 *
+	 * @param ctx
+	 * @return The signatures by entity id, or null if the document ran out of time.
+	 */
+	private Map<Integer, SemanticSignature> computeEntitySignatures(LinkingContext ctx) {
+		if (ctx.isExpired())
+			return null;
+
+		//the popular entities take their signature from the global store, and
+		//the pagerank only runs for the others.
+		Set<String> entities = ctx.entities;
+		Map<Integer, SemanticSignature> projected = null;
+		if (globalSigs != null) {
+			entities = new HashSet<String>(ctx.entities);
+			projected = projectGlobalSignatures(ctx, entities);
+		}
+
+		long begin = System.nanoTime();
+		ctx.ranker.setDeadline(ctx.deadline);
+		Map<Integer, SemanticSignature> entSemSigs =
+                ELUtils.computePageRankParallel(entities, ctx.e2id, ctx.ranker);
+		Metrics.time("computePageRankParallel", begin);
+		if (ctx.ranker.isExpired())
+			return null;
+		if (entSemSigs == null)
+			entSemSigs = new HashMap<Integer, SemanticSignature>();
+
+		long entries = 0, bytes = 0;
+		for (SemanticSignature sig : entSemSigs.values()) {
+			entries += sig.entries();
+			bytes += sig.bytes();
+		}
+		Metrics.record("signatureEntries", entries);
+		Metrics.record("signatureBytes", bytes);
+
+		if (ctx.comparedRankers != null)
+			compareEngines(ctx, entSemSigs);
+		if (projected != null)
+			entSemSigs.putAll(projected);
+
+		begin = System.nanoTime();
+        for (Mention m : ctx.mentions)
+            cleanupCandidates(ctx.candMap.get(m), ctx.entities, ctx.e2id, entSemSigs);
+		Metrics.time("cleanupCandidates", begin);
+
+		return entSemSigs;
+	}
+
+	/**
+	 * Take the signatures of the entities in the global store (see globalSignatures),
+	 * restricted to the nodes of the document graph and normalized again.
+	 *
+	 * @param ctx
+	 * @param entities The entities of the document; the ones with a signature are removed.
+	 * @return The signatures by entity id.
+	 */
+	private Map<Integer, SemanticSignature> projectGlobalSignatures(LinkingContext ctx, Set<String> entities) {
+		long begin = System.nanoTime();
+		Map<String, Integer> name2id = g.getNameIDMap();
+		Map<Integer, Integer> local = new HashMap<Integer, Integer>();
+		for (Map.Entry<String, Integer> e : ctx.e2id.entrySet()) {
+			Integer node = name2id.get(e.getKey());
+			if (node != null)
+				local.put(node, e.getValue());
+		}
+
+		int n = ctx.e2id.size();
+		Map<Integer, SemanticSignature> sigs = new HashMap<Integer, SemanticSignature>();
+		for (Iterator<String> it = entities.iterator(); it.hasNext();) {
+			String name = it.next();
+			Integer id = ctx.e2id.get(name);
+			Integer node = name2id.get(name);
+			int i = id == null || node == null ? -1 : globalSigs.find(node);
+			if (i < 0)
+				continue;
+
+			double[] rank = new double[n];
+			double mass = globalSigs.project(i, local, rank);
+			if (mass <= 0.0)
+				continue;
+
+			for (int j = 0; j < n; j++)
+				rank[j] /= mass;
+			sigs.put(id, SemanticSignature.create(rank, n));
+			Metrics.record("globalSignatureMassPpm", (long) (mass * 1000000));
+			it.remove();
+		}
+
+		Metrics.add("globalSignatureHits", sigs.size());
+		Metrics.add("globalSignatureMisses", entities.size());
+		Metrics.time("projectGlobalSignatures", begin);
+
+		return sigs;
+	}
+
+	/**
+	 * Compute the entity signatures again with the engines of compareEngines, and
+	 * record the time of each engine and the L1 distance of its signatures to the
+	 * ones of pprEngine.
+	 *
+	 * @param ctx
+	 * @param entSemSigs The signatures computed by pprEngine.
+	 */
+	private void compareEngines(LinkingContext ctx, Map<Integer, SemanticSignature> entSemSigs) {
+		for (Map.Entry<String, PersonalizedPageRank> e : ctx.comparedRankers.entrySet()) {
+			String name = "engine." + e.getKey();
+			PersonalizedPageRank ranker = e.getValue();
+
+			long begin = System.nanoTime();
+			ranker.setDeadline(ctx.deadline);
+			Map<Integer, SemanticSignature> sigs =
+					ELUtils.computePageRankParallel(ctx.entities, ctx.e2id, ranker);
+			Metrics.time(name, begin);
+			if (ranker.isExpired() || sigs == null)
+				continue;
+
+			for (Map.Entry<Integer, SemanticSignature> sig : entSemSigs.entrySet()) {
+				SemanticSignature approx = sigs.get(sig.getKey());
+				if (approx == null || approx.size() != sig.getValue().size()) {
+					Metrics.increment(name + ".missing");
+					continue;
+				}
+
+				double dist = ELUtils.distanceL1(sig.getValue().toArray(), approx.toArray());
+				Metrics.record(name + ".errorPpm", (long) (dist * 1000000));
+			}
+		}
+	}
+
+	/**
+	 * Compute the semantic signature of the document within its deadline, or
+	 * compose it from the entity signatures (see composeSignatures).
+	 *
+	 * @param entSemSigs The signatures of the entities.
+	 * @param start The previous signature of the document to start from (see warmStart), or null.
+	 * @return The signature, or null if the document ran out of time.
+	 */
+	private double[] computeDocumentSignature(LinkingContext ctx, Map<String, Double> docEntities,
+			Set<String> avoidSet, Map<Integer, SemanticSignature> entSemSigs, double[] start) {
+		return computeDocumentSignature(ctx, ctx.ranker, docEntities, avoidSet, entSemSigs, start);
+	}
+
+	/**
+	 * @param ranker The ranker to compute the signature with, e.g. a copy of the one of ctx.
+	 */
+	private double[] computeDocumentSignature(LinkingContext ctx, PersonalizedPageRank ranker,
+			Map<String, Double> docEntities, Set<String> avoidSet, Map<Integer, SemanticSignature> entSemSigs,
+			double[] start) {
+		if (!WNEDConfig.signatureCache)
+			return computeDocumentSignatureImpl(ctx, ranker, docEntities, avoidSet, entSemSigs, start);
+
+		//mentions with the same (effective) preference share the signature.
+		Map<String, Double> key = ELUtils.preferenceKey(docEntities, avoidSet, ctx.e2id);
+		double[] docSemSig = ctx.signatureCache.get(key);
+		if (docSemSig != null) {
+			Metrics.increment("signatureCacheHits");
+			return docSemSig;
+		}
+
+		Metrics.increment("signatureCacheMisses");
+		docSemSig = computeDocumentSignatureImpl(ctx, ranker, docEntities, avoidSet, entSemSigs, start);
+		if (docSemSig != null && docSemSig.length > 0)
+			ctx.signatureCache.put(key, docSemSig);
+
+		return docSemSig;
+	}
+
+	private double[] computeDocumentSignatureImpl(LinkingContext ctx, PersonalizedPageRank ranker,
+			Map<String, Double> docEntities, Set<String> avoidSet, Map<Integer, SemanticSignature> entSemSigs,
+			double[] start) {
+		if (ctx.isExpired())
+			return null;
+
+		long begin = System.nanoTime();
+		if (WNEDConfig.composeSignatures) {
+			double[] composed = ELUtils.composePageRank(docEntities, avoidSet, ctx.e2id, entSemSigs);
+			Metrics.time("composePageRank", begin);
+			if (composed != null) {
+				Metrics.increment("composedSignatures");
+				if (WNEDConfig.verifyComposition)
+					verifyComposition(ctx, ranker, docEntities, avoidSet, composed);
+				return composed;
+			}
+
+			//fall back on the power method, e.g. when an entity has no signature.
+			begin = System.nanoTime();
+		}
+
+		ranker.setDeadline(ctx.deadline);
+		double[] docSemSig = ELUtils.computePageRank(docEntities, avoidSet, ctx.e2id, ranker,
+				WNEDConfig.warmStart ? start : null);
+		Metrics.time("computePageRank", begin);
+		Metrics.record("pageRankIterations", ranker.getIterations());
+
+		return ranker.isExpired() ? null : docSemSig;
+	}
+
+	/**
+	 * Compare a composed signature of the document with the one computed by the
+	 * power method.
+	 */
+	private void verifyComposition(LinkingContext ctx, PersonalizedPageRank ranker,
+			Map<String, Double> docEntities, Set<String> avoidSet, double[] composed) {
+		double[] computed = ELUtils.computePageRank(docEntities, avoidSet, ctx.e2id, ranker);
+		if (computed.length != composed.length)
+			return;
+
+		double dist = ELUtils.distanceL1(composed, computed);
+		Metrics.record("compositionErrorPpm", (long) (dist * 1000000));
+		if (dist > WNEDConfig.compositionTolerance) {
+			Metrics.increment("compositionMismatches");
+			LOGGER.warn("[compose] composed document signature is " + dist
+					+ " (L1) away from the computed one");
+		}
+	}
+
+	/**
+	 * Disambiguate the given mentions against a single semantic signature of the
+	 * document, computed from the linked (or approximate) entities.
+	 *
+	 * @param ctx
+	 * @param mentions The mentions to disambiguate.
+	 * @param entSemSigs
+	 */
+	private void disambiguateSingleSignature(LinkingContext ctx, List<Mention> mentions,
+			Map<Integer, SemanticSignature> entSemSigs) {
+		Map<String, Double> docEntities = new HashMap<String, Double>();
+		for (Mention m : ctx.mentions) {
+			Map<Entity, Double> candidates = ctx.candMap.get(m);
+			if (candidates != null && candidates.size() == 1)
+				docEntities.put(candidates.keySet().iterator().next().getName(),
+						ctx.weightCache.getMentionWeight(m, WNEDConfig.mPrefStreg));
+		}
+
+		if (docEntities.isEmpty())
+			docEntities = getApproximateEntities(ctx.candMap, ctx.weightCache);
+
+		double[] docSemSig = computeDocumentSignature(ctx, docEntities, null, entSemSigs, null);
+		if (docSemSig == null) {
+			LOGGER.info("[deadline] document signature timed out, using prior and context similarity");
+			ctx.degrade(LinkingContext.LEVEL_PRIOR_CONTEXT);
+			disambiguatePriorContext(ctx, mentions);
+			return;
+		}
+
+		for (Mention m : mentions) {
+			Map<Entity, Double> candidates = ctx.candMap.get(m);
+			if (candidates == null || candidates.size() < 2)
+				continue;
+
+			long begin = System.nanoTime();
+			disambiguateMention(ctx, m, candidates, docSemSig, entSemSigs, ctx.e2id, ctx.weightCache);
+			Metrics.time("disambiguateMention", begin);
+		}
+	}
+
+	/**
+	 * Stop the mention by mention disambiguation, and link the remaining mentions
+	 * with a single signature of the document.
+	 */
+	private void degradeToSingleSignature(LinkingContext ctx, List<Mention> remaining,
+			Map<Integer, SemanticSignature> entSemSigs) {
+		LOGGER.info("[deadline] " + remaining.size() + " mentions left, using a single document signature");
+		ctx.degrade(LinkingContext.LEVEL_NO_ITERATION);
+		ctx.extendDeadline();
+		disambiguateSingleSignature(ctx, remaining, entSemSigs);
+	}
+
+	/**
+	 * Link each mention to the candidate with the highest combination of prior
+	 * probability and context similarity, without the graph.
+	 *
+	 * @param ctx
+	 * @param mentions The mentions to disambiguate.
+	 */
+	private void disambiguatePriorContext(LinkingContext ctx, List<Mention> mentions) {
+		for (Mention m : mentions) {
+			Map<Entity, Double> candidates = ctx.candMap.get(m);
+			if (candidates == null || candidates.size() < 2)
+				continue;
+
+			Entity maxEnt = null;
+			double maxValue = Double.NEGATIVE_INFINITY;
+			for (Entity ent : candidates.keySet()) {
+				double prior = candidates.get(ent);
+				double local = ctx.weightCache.getEntityWeight(m, ent, WNEDConfig.PrefStrategy.CTX_SIM);
+				double value = WNEDConfig.priorWeight * prior + WNEDConfig.localWeight * local;
+				if (value <= maxValue)
+					continue;
+
+				maxValue = value;
+				maxEnt = ent;
+			}
+
+			Entity[] candEntities = candidates.keySet().toArray(new Entity[1]);
+			for (Entity ent : candEntities) {
+				if (ent != maxEnt)
+					candidates.remove(ent);
+			}
+
+			ctx.scores.put(m, maxValue);
+			LOGGER.info("[result]" + m.getName() + "[" + ctx.truth.get(m) + "]" + " : " + maxEnt.getName());
+		}
+	}
+
+    /**
+     * Disambiguate each mention independently, using the unambiguous mentions
+     * as the representation of the document.
+     *
+     * @param ctx
+     * @param entSemSigs
+     */
+    private void disambiguateUniterative(LinkingContext ctx, Map<Integer, SemanticSignature> entSemSigs) {
+        List<Mention> mentions = ctx.mentions;
+        Map<Mention, Map<Entity, Double>> candMap = ctx.candMap;
+        WeightCache weightCache = ctx.weightCache;
+        Map<String, Double> unambigEntities = ctx.unambigEntities;
 
         //compute the semantic signature of the document using targetEntities.
         Map<Entity, Double> candidates = null;
 
-        //4. Entity disambiguation.
         //find unambiguous mentions.
         for (Mention m : mentions) {
             candidates = candMap.get(m);
@@ -528,131 +1131,153 @@ public class SemanticSignatureEL {
             }
         }
 
-        List<Double> docSemSig = null;
-        List<String> ret = new ArrayList<String>();
+        double[] docSemSig = null;
 
         //Update the semantic signature of the document.
         if (unambigEntities == null || unambigEntities.isEmpty())
             unambigEntities = getApproximateEntities(candMap, weightCache);
 
+        if (mentionPool != null) {
+            disambiguateConcurrently(ctx, mentions, unambigEntities, entSemSigs);
+            return;
+        }
+
         //Start disambiguation.
-        for (Mention m : mentions) {
+        for (int i = 0; i < mentions.size(); i++) {
+            Mention m = mentions.get(i);
             candidates = candMap.get(m);
-            if (candidates == null || candidates.isEmpty()) {
-                ret.add(null);
-            } else if (candidates.size() == 1) {
-                ret.add(candidates.keySet().iterator().next().getName());
-            } else {
-                // If there is any candidate in the unambigEntities,remove them and recompute the docSemSig.
-                // The reason is that candidate in the unambigEntities will get higher semantic similarity with the doc.
-                Set<String> avoidSet = new HashSet<String>();
-                for (Entity ent : candidates.keySet()) {
-                    String name = ent.getName();
-                    if (unambigEntities.containsKey(name)) {
-                        LOGGER.info("Candidate in the representative entities: " + name);
-                        avoidSet.add(name);
-                    }
-                }
+            if (candidates == null || candidates.size() < 2)
+                continue;
 
-                docSemSig = ELUtils.computePageRank(unambigEntities, avoidSet, e2id, ranker);
+            // If there is any candidate in the unambigEntities,remove them and recompute the docSemSig.
+            // The reason is that candidate in the unambigEntities will get higher semantic similarity with the doc.
+            Set<String> avoidSet = new HashSet<String>();
+            for (Entity ent : candidates.keySet()) {
+                String name = ent.getName();
+                if (unambigEntities.containsKey(name)) {
+                    LOGGER.info("Candidate in the representative entities: " + name);
+                    avoidSet.add(name);
+                }
+            }
 
-                Entity ent = disambiguateMention(m, candidates, docSemSig, entSemSigs, e2id, weightCache);
-                if (ent == null)
-                	ret.add(null);
-                else
-                	ret.add(ent.getName());
+            docSemSig = computeDocumentSignature(ctx, unambigEntities, avoidSet, entSemSigs, docSemSig);
+            if (docSemSig == null) {
+                degradeToSingleSignature(ctx, mentions.subList(i, mentions.size()), entSemSigs);
+                return;
             }
-        }
 
-        return ret;
+            long begin = System.nanoTime();
+            disambiguateMention(ctx, m, candidates, docSemSig, entSemSigs, ctx.e2id, weightCache);
+            Metrics.time("disambiguateMention", begin);
+        }
     }
 
-    /**
-	 * Use an iterative approach for the entity linking task.
-	 * 
+	/**
+	 * Disambiguate the mentions of the uniterative path concurrently. The document
+	 * is represented by the same entities for every mention, so the mentions are
+	 * independent: each task computes its signature with its own copy of the ranker,
+	 * and prunes a copy of the candidates of its mention, which are merged once all
+	 * the tasks are done.
+	 *
+	 * @param ctx
 	 * @param mentions
-	 * @return
+	 * @param docEntities The entities representing the document.
+	 * @param entSemSigs
 	 */
-	private List<String> linkingImplUnifiedIterative(List<Mention> mentions) {
-		long begin = 0, end = 0;
+	private void disambiguateConcurrently(final LinkingContext ctx, List<Mention> mentions,
+			final Map<String, Double> docEntities, final Map<Integer, SemanticSignature> entSemSigs) {
+		//rankers are not thread-safe, the copies are reused by the tasks one at a time.
+		final Queue<PersonalizedPageRank> rankers = new ConcurrentLinkedQueue<PersonalizedPageRank>();
+		List<Mention> ambiguous = new ArrayList<Mention>();
+		List<Callable<Map<Entity, Double>>> tasks = new ArrayList<Callable<Map<Entity, Double>>>();
+
+		for (final Mention m : mentions) {
+			final Map<Entity, Double> candidates = ctx.candMap.get(m);
+			if (candidates == null || candidates.size() < 2)
+				continue;
 
-		begin = System.currentTimeMillis();
-        //Select candidates.
-        Map<Mention, Map<Entity, Double>> candMap =
-				CSUtils.selectCandidatesMention(mentions, mentionCtxCache, entityCtxCache, cs);
-		end = System.currentTimeMillis();
-		LOGGER.info("[profiling]selectCandidatesMention: " + (end - begin) + "ms");
-		if (candMap == null || candMap.isEmpty())
-			return null;
+			ambiguous.add(m);
+			tasks.add(new Callable<Map<Entity, Double>>() {
+				public Map<Entity, Double> call() {
+					Set<String> avoidSet = new HashSet<String>();
+					for (Entity ent : candidates.keySet()) {
+						if (docEntities.containsKey(ent.getName()))
+							avoidSet.add(ent.getName());
+					}
+
+					PersonalizedPageRank ranker = rankers.poll();
+					if (ranker == null)
+						ranker = ctx.ranker.copy();
+
+					try {
+						double[] docSemSig = computeDocumentSignature(ctx, ranker, docEntities,
+								avoidSet, entSemSigs, null);
+						if (docSemSig == null)
+							return null;
+
+						long begin = System.nanoTime();
+						Map<Entity, Double> pruned = new HashMap<Entity, Double>(candidates);
+						disambiguateMention(ctx, m, pruned, docSemSig, entSemSigs, ctx.e2id, ctx.weightCache);
+						Metrics.time("disambiguateMention", begin);
+						return pruned;
+					} finally {
+						rankers.offer(ranker);
+					}
+				}
+			});
+		}
 
-		begin = System.currentTimeMillis();
-		WeightCache weightCache = new WeightCache();
-        //Cache the importance of mentions, context similarity and prior probability between mention and entity.
-        weightCache.prepareWeightCache(WNEDConfig.mPrefStreg, mentions, candMap);
-        weightCache.prepareContextSimCache(mentions, candMap);
-        weightCache.preparePriorProbCache(mentions, candMap);
-		end = System.currentTimeMillis();
-		LOGGER.info("[profiling]prepareCache: " + (end - begin) + "ms");
+		List<Future<Map<Entity, Double>>> futures = mentionPool.invokeAll(tasks);
+
+		//merge the pruned candidates, and collect the mentions that ran out of time.
+		List<Mention> remaining = new ArrayList<Mention>();
+		for (int i = 0; i < ambiguous.size(); i++) {
+			Mention m = ambiguous.get(i);
+			Map<Entity, Double> pruned = null;
+			try {
+				pruned = futures.get(i).get();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
 
-        //Use unambiguous mentions as the initial representation of the document.
-        //This step has to be here, since we do some cleanup when we collect the unambiguous entities.
-		begin = System.currentTimeMillis();
-        Map<String, Double> unambigEntities = null;
-        if (WNEDConfig.useUnambigEntity)
-            unambigEntities = getUnambiguousEntities(candMap, weightCache);
-		end = System.currentTimeMillis();
-		LOGGER.info("[profiling]getUnambiguousEntities: " + (end - begin) + "ms");
+			if (pruned == null)
+				remaining.add(m);
+			else
+				ctx.candMap.get(m).keySet().retainAll(pruned.keySet());
+		}
 
-        // Collect all entities for graph construction.
-		begin = System.currentTimeMillis();
-		Set<String> entities = collectNodes(candMap.keySet(), candMap);
-		if (entities == null || entities.isEmpty()) return null;
-		
-		end = System.currentTimeMillis();
-		LOGGER.info("[profiling]collectNodes: " + (end - begin) + "ms");
+		Metrics.record("mentionRankers", rankers.size());
+		if (!remaining.isEmpty())
+			degradeToSingleSignature(ctx, remaining, entSemSigs);
+	}
 
-		// 2. Construct a graph including all candidate entities and the target Entities.
-		begin = System.currentTimeMillis();
-		Map<String, Integer> e2id = new HashMap<String, Integer>();
-        PersonalizedPageRank ranker = null;
-        
-        if (WNEDConfig.weighted)
-        	ranker = new WeightedPersonalizedPageRank(GraphUtils.buildWeightedGraph(gg, entities, e2id));
-        else
-        	ranker = new UnweightedPersonalizedPageRank(GraphUtils.buildUnweightedGraph(gg, entities, e2id));
-
-		end = System.currentTimeMillis();
-		LOGGER.info("[profiling]buildGraph: " + (end - begin) + "ms");
-
-        //3. Compute the semantic signature, and perform the disambiguation.
-        //3.1. Compute the semantic signature of all entities.
-		begin = System.currentTimeMillis();
-		Map<Integer, List<Double>> entSemSigs =
-                ELUtils.computePageRankParallel(entities, e2id, ranker);
-		end = System.currentTimeMillis();
-		LOGGER.info("computePageRankParallel[" + entities.size() + "]: " + (end - begin) + "ms");
-		
-		//clear the candidates by removing entities not in the graph.
-		begin = System.currentTimeMillis();
-        for (Mention m : mentions)
-            cleanupCandidates(candMap.get(m), entities, e2id, entSemSigs);
-		end = System.currentTimeMillis();
-		LOGGER.info("[profiling]cleanupCandidates: " + (end - begin) + "ms");
+	/**
+	 * Disambiguate the mentions from the least ambiguous one, and add each linked
+	 * entity to the representation of the document.
+	 *
+	 * @param ctx
+	 * @param entSemSigs
+	 */
+	private void disambiguateIterative(LinkingContext ctx, Map<Integer, SemanticSignature> entSemSigs) {
+		long begin = 0;
+		List<Mention> mentions = ctx.mentions;
+		Map<Mention, Map<Entity, Double>> candMap = ctx.candMap;
+		WeightCache weightCache = ctx.weightCache;
+		Map<String, Double> unambigEntities = ctx.unambigEntities;
 
 		//compute the semantic signature of the document using targetEntities.
         Map<Entity, Double> candidates = null;
 
-        //4. Iterative entity disambiguation.
-		begin = System.currentTimeMillis();
+        //Iterative entity disambiguation.
+		begin = System.nanoTime();
         List<Mention> sortedMentions = sortMentionByAmbiguity(mentions, candMap);
-		end = System.currentTimeMillis();
-		LOGGER.info("[profiling]sortMentionByAmbiguity: " + (end - begin) + "ms");
+		Metrics.time("sortMentionByAmbiguity", begin);
 
         //find unambiguous mentions.
         for (Mention m : sortedMentions) {
             candidates = candMap.get(m);
             if (candidates == null || candidates.isEmpty()) {
-            	LOGGER.info("[result]" + m.getName() + "[" + truth.get(m) + "]" + " : " + "NIL");
+            	LOGGER.info("[result]" + m.getName() + "[" + ctx.truth.get(m) + "]" + " : " + "NIL");
                 continue;
             }
 
@@ -660,15 +1285,16 @@ public class SemanticSignatureEL {
                 double mWeight = weightCache.getMentionWeight(m, WNEDConfig.mPrefStreg);
                 Entity finalEnt = candidates.keySet().iterator().next();
                 unambigEntities.put(finalEnt.getName(), mWeight);
-            	LOGGER.info("[result]" + m.getName() + "[" + truth.get(m) + "]" + " : " + finalEnt.getName());
+            	LOGGER.info("[result]" + m.getName() + "[" + ctx.truth.get(m) + "]" + " : " + finalEnt.getName());
             }
         }
 
-        List<Double> docSemSig = null;
+        double[] docSemSig = null;
         Map<String, Double> tempEntities = null;
 
         //Start disambiguation.
-        for (Mention m : sortedMentions) {
+        for (int i = 0; i < sortedMentions.size(); i++) {
+            Mention m = sortedMentions.get(i);
             candidates = candMap.get(m);
             if (candidates == null || candidates.size() < 2)
                 continue;
@@ -691,35 +1317,23 @@ public class SemanticSignatureEL {
                 }
             }
 
-    		begin = System.currentTimeMillis();
-            docSemSig = ELUtils.computePageRank(tempEntities, avoidSet, e2id, ranker);
-    		end = System.currentTimeMillis();
-    		LOGGER.info("[profiling]ELUtils.computePageRank: " + (end - begin) + "ms");
+            docSemSig = computeDocumentSignature(ctx, tempEntities, avoidSet, entSemSigs, docSemSig);
+            if (docSemSig == null) {
+                degradeToSingleSignature(ctx, sortedMentions.subList(i, sortedMentions.size()), entSemSigs);
+                return;
+            }
 
-    		begin = System.currentTimeMillis();
-            Entity ent = disambiguateMention(m, candidates, docSemSig, entSemSigs, e2id, weightCache);
+    		begin = System.nanoTime();
+            Entity ent = disambiguateMention(ctx, m, candidates, docSemSig, entSemSigs, ctx.e2id, weightCache);
             if (ent == null) {
-            	LOGGER.info("[result]" + m.getName() + "[" + truth.get(m) + "]" + " : " + "NIL");
+            	LOGGER.info("[result]" + m.getName() + "[" + ctx.truth.get(m) + "]" + " : " + "NIL");
             } else {
             	unambigEntities.put(ent.getName(), weightCache.getMentionWeight(m, WNEDConfig.mPrefStreg));
-            	LOGGER.info("[result]" + m.getName() + "[" + truth.get(m) + "]" + " : " + ent.getName());
+            	LOGGER.info("[result]" + m.getName() + "[" + ctx.truth.get(m) + "]" + " : " + ent.getName());
             }
 
-    		end = System.currentTimeMillis();
-    		LOGGER.info("[profiling]disambiguateMention: " + (end - begin) + "ms");
+    		Metrics.time("disambiguateMention", begin);
         }
-
-
-        List<String> ret = new ArrayList<String>();
-		for (Mention m : mentions) {
-			candidates = candMap.get(m);
-			if (candidates == null || candidates.isEmpty())
-				ret.add(null);
-            else
-	    		ret.add(candidates.keySet().iterator().next().getName());
-		}
-		
-		return ret;
 	}
 
 	private void normalizeFeatures(List<Feature> rankList) {
@@ -783,9 +1397,9 @@ public class SemanticSignatureEL {
 		return candList.get(maxIdx);
 	}
 	
-    private Entity disambiguateMention(Mention m, Map<Entity, Double> candidates,
-                                       List<Double> docSemSig,
-                                       Map<Integer, List<Double>> entSemSigs,
+    private Entity disambiguateMention(LinkingContext ctx, Mention m, Map<Entity, Double> candidates,
+                                       double[] docSemSig,
+                                       Map<Integer, SemanticSignature> entSemSigs,
                                        Map<String, Integer> e2id,
                                        WeightCache weightCache) {
         if (candidates == null || candidates.isEmpty())
@@ -826,20 +1440,13 @@ public class SemanticSignatureEL {
         	Entity ent = entities.get(i);
         	Feature f = features.get(i);
         	if (ent == ret) {
-                LOGGER.info("[result]:" + ent.getName()
-                        + "\t" + df.format(f.prior) + "\t"
-                        + df.format(f.local) + "\t"
-                        + df.format(f.semSim) + "\t"
-                        + df.format(f.nameSim));
+                LOGGER.info("[result]:" + ent.getName() + "\t" + format(f));
+                ctx.scores.put(m, f.score());
 
         		continue;
         	}
 
-            LOGGER.info("[removed4]:" + ent.getName()
-                    + "\t" + df.format(f.prior) + "\t"
-                    + df.format(f.local) + "\t"
-                    + df.format(f.semSim) + "\t"
-                    + df.format(f.nameSim));
+            LOGGER.info("[removed4]:" + ent.getName() + "\t" + format(f));
 
             candidates.remove(ent);
         }
@@ -847,6 +1454,14 @@ public class SemanticSignatureEL {
         return ret;
     }
 
+    private static String format(Feature f) {
+        DecimalFormat fmt = df.get();
+        return fmt.format(f.prior) + "\t"
+                + fmt.format(f.local) + "\t"
+                + fmt.format(f.semSim) + "\t"
+                + fmt.format(f.nameSim);
+    }
+
     private Map<String, Double> getApproximateEntities(
                                     Map<Mention, Map<Entity, Double>> candMap, WeightCache weightCache) {
 
@@ -921,69 +1536,142 @@ public class SemanticSignatureEL {
         return ret;
     }
 
-	/**
-	 * Use an iterative approach for the entity linking task.
-	 * 
-	 * @param mentions
-	 * @return
-	 */
-	private List<String> linkingImplUnified(List<Mention> mentions) {
-		if (WNEDConfig.useIterative)
-			return linkingImplUnifiedIterative(mentions);
-		else
-			return linkingImplUnifiedUniterative(mentions);
-	}
-
     public Map<SurfaceForm, String> linking(String content, List<SurfaceForm> markings)
+    {
+        return linking(content, null, markings);
+    }
+
+    /**
+     * Link the markings of a document.
+     *
+     * @param content The text of the document.
+     * @param doc The document annotated by the caller (sentences and tokens, with
+     *            offsets into the text), or null to annotate the text here.
+     * @param markings The mentions to be linked, with their types if known.
+     * @return The entity of each marking, null for NIL.
+     */
+    public Map<SurfaceForm, String> linking(String content, Document doc, List<SurfaceForm> markings)
     {
         //1. Load the query file into a DOM tree.
         if (content == null || markings.size() <= 0) {
             LOGGER.warn("No markings are provided.");
         }
 
-        List<Mention> mentions = new ArrayList<Mention>();
-
-        //get the annotations of each document.
-        Document doc = DocumentUtils.annotateDocument(content, ner, orthoMatcher);
-        Map<Integer, Mention> idxMenMap = DocumentUtils.getIndex(doc);
-
-        //clear the data for re-use.
-        mentions.clear();;
-
-        truth.clear();
-        mentionCtxCache.clear();
-        entityCtxCache.clear();
-
+        List<String> names = new ArrayList<String>();
+        List<Integer> offsets = new ArrayList<Integer>();
+        List<String> types = new ArrayList<String>();
+        List<SurfaceForm> valid = new ArrayList<SurfaceForm>();
         for (int i = 0; i < markings.size(); i++) {
             SurfaceForm marking = markings.get(i);
-            String mentionName = marking.text;
-            int offset = marking.offset;
-            int length = marking.length;
-
-            if (mentionName == null || mentionName.isEmpty())
+            if (marking.text == null || marking.text.isEmpty())
                 continue;
 
-            Mention m = DocumentUtils.createMention(mentionName, offset, doc, idxMenMap);
-            mentions.add(m);
+            names.add(marking.text);
+            offsets.add(marking.offset);
+            types.add(marking.type);
+            valid.add(marking);
         }
 
-        for (Mention m : mentions)
-            LOGGER.info(m.getName() + "[" + m.getEntity().getType() + "]" + ":" + m.getEntity().getName());
-
-        ELUtils.resolve(mentions);
-
-        List<String> results = linkingImplUnified(mentions);
+        LinkingContext ctx = newContext();
+        ctx.setDocument(doc);
+        ctx.setMentionTypes(types);
+        List<String> results = linkDocument(ctx, content, names, offsets, null);
         Map<SurfaceForm, String>  resultMap = new HashMap<SurfaceForm, String>();
 
         if (results != null) {
-            for (int j = 0; j < markings.size(); j++) {
-                resultMap.put(markings.get(j), results.get(j));
+            for (int j = 0; j < valid.size(); j++) {
+                resultMap.put(valid.get(j), results.get(j));
             }
         }
 
         return resultMap;
     }
 
+	/**
+	 * Link the given mentions of one document. This method only touches the state
+	 * in the given context, so it can be called concurrently with different
+	 * contexts.
+	 *
+	 * @param ctx The per-document linking state.
+	 * @param content The text of the document.
+	 * @param names The surface names of the mentions.
+	 * @param offsets The character offsets of the mentions.
+	 * @param wikiNames The true entities of the mentions (null entries if unknown),
+	 *                  used for logging only. Can be null.
+	 * @return The linked entities, in the same order as the given mentions.
+	 */
+	public List<String> linkDocument(LinkingContext ctx, String content, List<String> names,
+			List<Integer> offsets, List<String> wikiNames) {
+		long begin = 0;
+
+		annotate(ctx, content, names, offsets, wikiNames);
+
+		begin = System.nanoTime();
+		List<String> results = null;
+		if (selectCandidates(ctx)) {
+			buildGraph(ctx);
+			results = rank(ctx);
+		}
+		Metrics.time("link", begin);
+
+		return results;
+	}
+
+	/**
+	 * The annotations of one document in the query file.
+	 */
+	private class DocumentTask implements Callable<List<String>> {
+		String docName = null;
+		List<Element> elements = new ArrayList<Element>();
+		List<String> names = new ArrayList<String>();
+		List<Integer> offsets = new ArrayList<Integer>();
+		List<String> wikiNames = new ArrayList<String>();
+		Element docEle = null;
+		//the strategy the document was linked with, see LinkingContext.
+		String level = null;
+
+		public List<String> call() {
+			LOGGER.info("[doc]: " + docName);
+			//Tokenize the document and get the index of each term.
+			String content = ELUtils.readFile(WNEDConfig.DATASET_DIR + "/" + docName);
+
+			LinkingContext ctx = newContext();
+			List<String> results = linkDocument(ctx, content, names, offsets, wikiNames);
+			level = ctx.getLevelName();
+
+			return results;
+		}
+	}
+
+	/**
+	 * @param file The query file.
+	 * @return The name of the file the linking results of the query file go to.
+	 */
+	static String outputFile(String file) {
+		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss");
+		String timestamp = sdf.format(new Date(System.currentTimeMillis()));
+		if (WNEDConfig.supervised)
+			return file + ".l2r-" + timestamp;
+		else
+			return file + ".rel-rw-" + timestamp;
+	}
+
+	private List<List<String>> getResults(List<DocumentTask> tasks, List<Future<List<String>>> futures) {
+		List<List<String>> allResults = new ArrayList<List<String>>();
+		for (int i = 0; i < futures.size(); i++) {
+			List<String> results = null;
+			try {
+				results = futures.get(i).get();
+			} catch (Exception e) {
+				LOGGER.error("Failed to link " + tasks.get(i).docName);
+				e.printStackTrace();
+			}
+			allResults.add(results);
+		}
+
+		return allResults;
+	}
+
 	public String linking(String file) {
 		//1. Load the query file into a DOM tree.
 		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
@@ -1011,47 +1699,20 @@ public class SemanticSignatureEL {
 			return null;
 		}
 		
-		long begin = 0, end = 0;
-		begin = System.currentTimeMillis();
-		end = System.currentTimeMillis();
-		LOGGER.info("[profiling]" + (end - begin) + "ms");
-		
-		List<Mention> mentions = new ArrayList<Mention>();
-		List<Element> elements = new ArrayList<Element>();
-
+		//2. Collect the annotations of each document. The DOM is not thread-safe,
+		//so it is only accessed from this thread.
+		List<DocumentTask> tasks = new ArrayList<DocumentTask>();
 		for (int i = 0; i < docNL.getLength(); i++) {
-			//get the annotations of each document.
 			Element docEle = (Element)docNL.item(i);
+			DocumentTask task = new DocumentTask();
 			//get the attribute <docName> of each document
-			String docName = docEle.getAttribute("docName");
+			task.docName = docEle.getAttribute("docName");
+			task.docEle = docEle;
 			//get a node list of <annotation>
 			NodeList annoteNL = docEle.getElementsByTagName("annotation");
 			if (annoteNL == null || annoteNL.getLength() <= 0)
 				continue;
 
-			LOGGER.info("[doc]: " + docName);
-			//Tokenize the document and get the index of each term.
-			String content = ELUtils.readFile(WNEDConfig.DATASET_DIR + "/" + docName);
-			// Annotate document.
-			begin = System.currentTimeMillis();
-			Document doc = DocumentUtils.annotateDocument(content, ner, orthoMatcher);
-			end = System.currentTimeMillis();
-			LOGGER.info("[profiling]annotateDocument: " + (end - begin) + " ms");
-
-			begin = System.currentTimeMillis();
-			Map<Integer, Mention> idxMenMap = DocumentUtils.getIndex(doc);
-			end = System.currentTimeMillis();
-			LOGGER.info("[profiling]DocumentUtils.getIndex: " + (end - begin) + " ms");
-
-			//clear the data for re-use.
-			mentions.clear();;
-			elements.clear();
-
-			truth.clear();
-            mentionCtxCache.clear();
-            entityCtxCache.clear();
-
-			begin = System.currentTimeMillis();
 			for (int j = 0; j < annoteNL.getLength(); j++) {
 				Element annoteEle = (Element) annoteNL.item(j);
 				
@@ -1068,27 +1729,59 @@ public class SemanticSignatureEL {
 				if (!WNEDConfig.NILPrediction && wikiName == null)
 					continue;
 
-				Mention m = DocumentUtils.createMention(mentionName, offset, doc, idxMenMap);
-				mentions.add(m);
-				elements.add(annoteEle);
-				if (wikiName != null)	truth.put(m, wikiName);
+				task.elements.add(annoteEle);
+				task.names.add(mentionName);
+				task.offsets.add(offset);
+				task.wikiNames.add(wikiName);
 			}
 
-			end = System.currentTimeMillis();
-			LOGGER.info("[profiling]createMention: " + (end - begin) + " ms");
-
-			if (elements == null || elements.isEmpty())
+			if (task.elements.isEmpty())
 				continue;
-			
-			for (Mention m : mentions)
-				LOGGER.info(m.getName() + "[" + m.getEntity().getType() + "]" + ":" + m.getEntity().getName());
 
-            ELUtils.resolve(mentions);
+			tasks.add(task);
+		}
+
+		//3. Link the documents, possibly in parallel.
+		long begin = System.nanoTime();
+		List<List<String>> allResults = new ArrayList<List<String>>();
+		int numThreads = Math.min(WNEDConfig.linkingThreads, tasks.size());
+		if (WNEDConfig.pipeline) {
+			LinkingPipeline pipeline = new LinkingPipeline(this);
+			List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>();
+			List<LinkingContext> contexts = new ArrayList<LinkingContext>();
+			for (DocumentTask task : tasks) {
+				LOGGER.info("[doc]: " + task.docName);
+				String content = ELUtils.readFile(WNEDConfig.DATASET_DIR + "/" + task.docName);
+				LinkingContext ctx = newContext();
+				contexts.add(ctx);
+				futures.add(pipeline.submit(ctx, content, task.names, task.offsets, task.wikiNames));
+			}
+
+			allResults = getResults(tasks, futures);
+			pipeline.shutdown();
+			for (int i = 0; i < tasks.size(); i++)
+				tasks.get(i).level = contexts.get(i).getLevelName();
+		} else if (numThreads <= 1) {
+			for (DocumentTask task : tasks)
+				allResults.add(task.call());
+		} else {
+			ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+			List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>();
+			for (DocumentTask task : tasks)
+				futures.add(pool.submit(task));
+
+			allResults = getResults(tasks, futures);
+			pool.shutdown();
+		}
+		LOGGER.info("Linked " + tasks.size() + " documents in "
+				+ (System.nanoTime() - begin) / 1000000 + " ms");
 
-			begin = System.currentTimeMillis();
-            List<String> results = linkingImplUnified(mentions);
-			end = System.currentTimeMillis();
-			LOGGER.info("[profiling]linkingImplUnified: " + (end - begin) + " ms");
+		//4. Append the results to the DOM tree.
+		for (int i = 0; i < tasks.size(); i++) {
+			List<Element> elements = tasks.get(i).elements;
+			List<String> results = allResults.get(i);
+			if (WNEDConfig.docDeadlineMs > 0 && tasks.get(i).level != null)
+				tasks.get(i).docEle.setAttribute("level", tasks.get(i).level);
 
 			for (int j = 0; j < elements.size(); j++) {
 				Element ele = elements.get(j);
@@ -1106,20 +1799,13 @@ public class SemanticSignatureEL {
 		}
 		
 		//output to a file.
-		String outFile = null;
+		String outFile = outputFile(file);
 		try {
 			TransformerFactory transformerFactory = TransformerFactory.newInstance();
 			Transformer transformer = transformerFactory.newTransformer();
 			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
 			transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
 
-			SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss");
-			String timestamp = sdf.format(new Date(System.currentTimeMillis()));
-			if (WNEDConfig.supervised)
-				outFile = new String(file + ".l2r-" + timestamp);
-			else
-				outFile = new String(file + ".rel-rw-" + timestamp);
-			
 			DOMSource source = new DOMSource(dom);
 			StreamResult result = new StreamResult(new File(outFile));
 			
@@ -1147,7 +1833,16 @@ public class SemanticSignatureEL {
 	public static void main(String[] args) {
 		SemanticSignatureEL obj = new SemanticSignatureEL(args[0]);
 
+		if (WNEDConfig.streaming) {
+			//the accuracy is computed while linking.
+			String outFile = outputFile(WNEDConfig.targetFile);
+			new StreamingLinker(obj).linking(WNEDConfig.targetFile, outFile).report();
+			Metrics.dump(WNEDConfig.metricsFile);
+			return;
+		}
+
 		String outFile = obj.linking(WNEDConfig.targetFile);
+		Metrics.dump(WNEDConfig.metricsFile);
 
 		// report the accuracy of the entity linking.
 		Evaluation.accuracy(outFile);
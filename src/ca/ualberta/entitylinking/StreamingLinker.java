@@ -0,0 +1,379 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import ca.ualberta.entitylinking.config.WNEDConfig;
+import ca.ualberta.entitylinking.experiment.Evaluation;
+import ca.ualberta.entitylinking.utils.ELUtils;
+import ca.ualberta.entitylinking.utils.Metrics;
+
+/**
+ * Links a query file one &lt;document&gt; at a time.
+ *
+ * The query file is read with StAX, and each document is written to the output
+ * file (with the &lt;entity&gt; of its annotations) as soon as it is linked, so
+ * the memory use does not depend on the size of the corpus, and the results of
+ * the linked documents are kept if the process dies. The accuracy is also
+ * computed on the fly.
+ */
+public class StreamingLinker {
+	private static Logger LOGGER = LogManager.getLogger(StreamingLinker.class);
+
+	private SemanticSignatureEL linker = null;
+	private Evaluation.Accumulator accuracy = new Evaluation.Accumulator();
+
+	public StreamingLinker(SemanticSignatureEL linker) {
+		this.linker = linker;
+	}
+
+	/**
+	 * An attribute, or a child element with its text, e.g. &lt;mention&gt;.
+	 */
+	private static class XmlField {
+		String name = null;
+		String text = null;
+
+		XmlField(String name, String text) {
+			this.name = name;
+			this.text = text;
+		}
+	}
+
+	/**
+	 * A &lt;document&gt; of the query file.
+	 */
+	private class StreamDocument implements Callable<List<String>> {
+		String docName = null;
+		List<XmlField> attributes = new ArrayList<XmlField>();
+		//the child elements of each <annotation>.
+		List<List<XmlField>> annotations = new ArrayList<List<XmlField>>();
+
+		//the annotations to be linked, as indexes into annotations.
+		List<Integer> queries = new ArrayList<Integer>();
+		List<String> names = new ArrayList<String>();
+		List<Integer> offsets = new ArrayList<Integer>();
+		List<String> wikiNames = new ArrayList<String>();
+		//set once the document is submitted, it holds the strategy it was linked with.
+		LinkingContext ctx = null;
+
+		void addAnnotation(List<XmlField> fields) {
+			String mentionName = null, wikiName = null, offset = null;
+			for (XmlField field : fields) {
+				if (field.name.equals("mention"))
+					mentionName = field.text;
+				else if (field.name.equals("wikiName"))
+					wikiName = field.text;
+				else if (field.name.equals("offset"))
+					offset = field.text;
+			}
+
+			annotations.add(fields);
+
+			if (mentionName == null || mentionName.isEmpty())
+				return;
+
+			if (wikiName != null && (wikiName.equals("NIL") || wikiName.isEmpty()))
+				wikiName = null;
+
+			if (!WNEDConfig.NILPrediction && wikiName == null)
+				return;
+
+			//the mention cannot be placed in the text without its offset.
+			int bPos = -1;
+			try {
+				bPos = offset == null ? -1 : Integer.parseInt(offset.trim());
+			} catch (NumberFormatException e) {
+			}
+			if (bPos < 0) {
+				LOGGER.warn("Skipping the mention " + mentionName + " of " + docName + ": no valid offset");
+				return;
+			}
+
+			queries.add(annotations.size() - 1);
+			names.add(mentionName);
+			offsets.add(bPos);
+			wikiNames.add(wikiName);
+		}
+
+		public List<String> call() {
+			if (queries.isEmpty())
+				return null;
+
+			LOGGER.info("[doc]: " + docName);
+			String content = ELUtils.readFile(WNEDConfig.DATASET_DIR + "/" + docName);
+
+			ctx = linker.newContext();
+			return linker.linkDocument(ctx, content, names, offsets, wikiNames);
+		}
+
+		Future<List<String>> submit(LinkingPipeline pipeline) {
+			if (queries.isEmpty())
+				return CompletableFuture.completedFuture(null);
+
+			LOGGER.info("[doc]: " + docName);
+			String content = ELUtils.readFile(WNEDConfig.DATASET_DIR + "/" + docName);
+
+			ctx = linker.newContext();
+			return pipeline.submit(ctx, content, names, offsets, wikiNames);
+		}
+	}
+
+	private static List<XmlField> readAttributes(XMLStreamReader reader) {
+		List<XmlField> attributes = new ArrayList<XmlField>();
+		for (int i = 0; i < reader.getAttributeCount(); i++)
+			attributes.add(new XmlField(reader.getAttributeLocalName(i), reader.getAttributeValue(i)));
+
+		return attributes;
+	}
+
+	/**
+	 * Read the children of an &lt;annotation&gt;, the reader is positioned on the
+	 * start tag, and will be on the end tag when it returns.
+	 */
+	private static List<XmlField> readAnnotation(XMLStreamReader reader) throws Exception {
+		List<XmlField> fields = new ArrayList<XmlField>();
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				fields.add(new XmlField(reader.getLocalName(), reader.getElementText()));
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				break;
+		}
+
+		return fields;
+	}
+
+	/**
+	 * Read a &lt;document&gt;, the reader is positioned on the start tag, and will
+	 * be on the end tag when it returns.
+	 */
+	private StreamDocument readDocument(XMLStreamReader reader) throws Exception {
+		StreamDocument doc = new StreamDocument();
+		doc.attributes = readAttributes(reader);
+		doc.docName = reader.getAttributeValue(null, "docName");
+
+		int depth = 1;
+		while (reader.hasNext() && depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if (reader.getLocalName().equals("annotation"))
+					doc.addAnnotation(readAnnotation(reader));
+				else
+					depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+
+		return doc;
+	}
+
+	private void writeDocument(XMLStreamWriter writer, StreamDocument doc, List<String> results)
+			throws Exception {
+		List<String> truths = new ArrayList<String>();
+		List<String> entities = new ArrayList<String>();
+
+		writer.writeCharacters("\n  ");
+		writer.writeStartElement("document");
+		for (XmlField attr : doc.attributes)
+			writer.writeAttribute(attr.name, attr.text);
+		if (WNEDConfig.docDeadlineMs > 0 && doc.ctx != null)
+			writer.writeAttribute("level", doc.ctx.getLevelName());
+		doc.ctx = null;
+
+		int query = 0;
+		for (int i = 0; i < doc.annotations.size(); i++) {
+			String wikiName = null, entity = null;
+
+			writer.writeCharacters("\n    ");
+			writer.writeStartElement("annotation");
+			for (XmlField field : doc.annotations.get(i)) {
+				writer.writeCharacters("\n      ");
+				writer.writeStartElement(field.name);
+				writer.writeCharacters(field.text);
+				writer.writeEndElement();
+
+				if (field.name.equals("wikiName"))
+					wikiName = field.text;
+			}
+
+			if (query < doc.queries.size() && doc.queries.get(query) == i) {
+				if (results != null && !results.isEmpty() && results.get(query) != null)
+					entity = results.get(query);
+				else
+					entity = "NIL";
+
+				writer.writeCharacters("\n      ");
+				writer.writeStartElement("entity");
+				writer.writeCharacters(entity);
+				writer.writeEndElement();
+				query++;
+			}
+
+			writer.writeCharacters("\n    ");
+			writer.writeEndElement();
+
+			truths.add(wikiName);
+			entities.add(entity);
+		}
+
+		writer.writeCharacters("\n  ");
+		writer.writeEndElement();
+		writer.flush();
+
+		if (!doc.queries.isEmpty())
+			accuracy.addDocument(doc.docName, truths, entities);
+	}
+
+	/**
+	 * Wait for the oldest pending document, and write it out.
+	 */
+	private void writeNext(XMLStreamWriter writer, LinkedList<StreamDocument> pendingDocs,
+			LinkedList<Future<List<String>>> pending) throws Exception {
+		StreamDocument doc = pendingDocs.poll();
+		List<String> results = null;
+		try {
+			results = pending.poll().get();
+		} catch (Exception e) {
+			LOGGER.error("Failed to link " + doc.docName);
+			e.printStackTrace();
+		}
+
+		writeDocument(writer, doc, results);
+	}
+
+	/**
+	 * Link all the documents in the given query file.
+	 *
+	 * @param file The query file.
+	 * @param outFile The output file.
+	 * @return The accuracy of the linked documents.
+	 */
+	public Evaluation.Accumulator linking(String file, String outFile) {
+		int numThreads = WNEDConfig.linkingThreads;
+		//the number of documents that are read ahead of the one being written.
+		int window = 2 * numThreads;
+		ExecutorService pool = null;
+		LinkingPipeline pipeline = null;
+		if (WNEDConfig.pipeline) {
+			pipeline = new LinkingPipeline(linker);
+			window = WNEDConfig.pipelineQueueSize * 4 + WNEDConfig.annotateThreads
+					+ WNEDConfig.candidateThreads + WNEDConfig.graphThreads + WNEDConfig.rankThreads;
+		} else if (numThreads > 1) {
+			pool = Executors.newFixedThreadPool(numThreads);
+		}
+
+		LinkedList<StreamDocument> pendingDocs = new LinkedList<StreamDocument>();
+		LinkedList<Future<List<String>>> pending = new LinkedList<Future<List<String>>>();
+
+		InputStream in = null;
+		OutputStream out = null;
+		long begin = System.nanoTime();
+		try {
+			in = new FileInputStream(file);
+			out = new FileOutputStream(outFile);
+			XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in, "UTF-8");
+			XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+
+			writer.writeStartDocument("UTF-8", "1.0");
+			boolean rootSeen = false;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event != XMLStreamConstants.START_ELEMENT)
+					continue;
+
+				if (!rootSeen) {
+					//copy the root element.
+					rootSeen = true;
+					writer.writeCharacters("\n");
+					writer.writeStartElement(reader.getLocalName());
+					for (XmlField attr : readAttributes(reader))
+						writer.writeAttribute(attr.name, attr.text);
+					continue;
+				}
+
+				if (!reader.getLocalName().equals("document"))
+					continue;
+
+				StreamDocument doc = readDocument(reader);
+				if (pool == null && pipeline == null) {
+					writeDocument(writer, doc, doc.call());
+					continue;
+				}
+
+				pendingDocs.add(doc);
+				if (pipeline != null)
+					pending.add(doc.submit(pipeline));
+				else
+					pending.add(pool.submit(doc));
+				while (pending.size() >= window)
+					writeNext(writer, pendingDocs, pending);
+			}
+
+			while (!pending.isEmpty())
+				writeNext(writer, pendingDocs, pending);
+
+			if (rootSeen) {
+				writer.writeCharacters("\n");
+				writer.writeEndElement();
+			}
+			writer.writeEndDocument();
+			writer.flush();
+			writer.close();
+			reader.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+			if (pipeline != null)
+				pipeline.shutdown();
+
+			try {
+				if (in != null) in.close();
+				if (out != null) out.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+
+		Metrics.time("linkCorpus", begin);
+
+		return accuracy;
+	}
+}
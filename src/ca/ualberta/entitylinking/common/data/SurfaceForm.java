@@ -19,10 +19,17 @@ public class SurfaceForm {
     public String text;
     public int offset;
     public int length;
+    //the entity type (e.g. PER, ORG, LOC or MISC) if known, see Entity.
+    public String type;
 
     public SurfaceForm(String text, int offset, int length) {
+        this(text, offset, length, null);
+    }
+
+    public SurfaceForm(String text, int offset, int length, String type) {
         this.text = text;
         this.offset = offset;
         this.length = length;
+        this.type = type;
     }
 }
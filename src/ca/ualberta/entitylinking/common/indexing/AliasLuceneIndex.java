@@ -49,7 +49,9 @@ import org.apache.lucene.search.QueryTermVector;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.spell.NGramDistance;
 
+import ca.ualberta.entitylinking.utils.MappedNameTable;
 import ca.ualberta.entitylinking.utils.Rank;
+import ca.ualberta.entitylinking.utils.StartupSnapshot;
 import ca.ualberta.entitylinking.utils.similarity.StringSim;
 
 public class AliasLuceneIndex {
@@ -148,20 +150,38 @@ public class AliasLuceneIndex {
 	}
 	
 	public boolean loadIndex(String diskDir) {
+		//with a startup snapshot, the index is used in place.
+		return loadIndex(diskDir, !StartupSnapshot.isEnabled());
+	}
+
+	/**
+	 * @param diskDir
+	 * @param inMemory Copy the index into memory, instead of reading the mapped files.
+	 * @return
+	 */
+	public boolean loadIndex(String diskDir, boolean inMemory) {
 		Directory dir = null;
 
 		try {
-			dir = new RAMDirectory(new MMapDirectory(new File(diskDir)));
+			dir = new MMapDirectory(new File(diskDir));
+			if (inMemory)
+				dir = new RAMDirectory(dir);
 			if (!IndexReader.indexExists(dir))
 				return false;
 			
 			reader = IndexReader.open(dir);
-			String[] keyArray = FieldCache.DEFAULT.getStrings(reader, "docID");
-		//	int[] sizeArray= FieldCache.DEFAULT.getInts(reader, "size");
 			searcher = new IndexSearcher(reader);
 
-			for (int i = 0; i < keyArray.length; i++)
-				docIDMap.put(keyArray[i], i);
+			MappedNameTable table = StartupSnapshot.open(StartupSnapshot.ALIAS, diskDir);
+			if (table != null) {
+				docIDMap = table.asMap();
+			} else {
+				String[] keyArray = FieldCache.DEFAULT.getStrings(reader, "docID");
+			//	int[] sizeArray= FieldCache.DEFAULT.getInts(reader, "size");
+
+				for (int i = 0; i < keyArray.length; i++)
+					docIDMap.put(keyArray[i], i);
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -210,6 +230,13 @@ public class AliasLuceneIndex {
 		}
 	}
 	
+	/**
+	 * @return The map from aliases to their document ids.
+	 */
+	public Map<String, Integer> getDocIDMap() {
+		return docIDMap;
+	}
+
 	public boolean containsAlias(String aliasName) {
 		return docIDMap.containsKey(aliasName.toLowerCase());
 	}
@@ -35,6 +35,8 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.util.Version;
 
 import ca.ualberta.entitylinking.config.WNEDConfig;
+import ca.ualberta.entitylinking.utils.MappedNameTable;
+import ca.ualberta.entitylinking.utils.StartupSnapshot;
 import ca.ualberta.entitylinking.utils.StringUtils;
 
 public class TFIDF3x {
@@ -69,6 +71,12 @@ public class TFIDF3x {
 		try {
 			reader = IndexReader.open(FSDirectory.open(new File(indexDir)));
 			
+			MappedNameTable table = StartupSnapshot.open(StartupSnapshot.TFIDF, indexDir);
+			if (table != null) {
+				name2id = table.asMap();
+				return;
+			}
+
 			String[] stringArray = FieldCache.DEFAULT.getStrings(reader, "name");
 			
 			// build a map from string to its document id.
@@ -80,6 +88,13 @@ public class TFIDF3x {
 		}
 	}
 
+	/**
+	 * @return The map from document names to their ids.
+	 */
+	public Map<String, Integer> getNameIDMap() {
+		return name2id;
+	}
+
 	public boolean containsDoc(String docName) {
 		return name2id.containsKey(docName);
 	}
@@ -277,7 +277,11 @@ public class OrthoMatcherCoref {
 		}
 	}
 
-	public void findCoreferences(Document document){
+	/**
+	 * The GATE resources are shared by all documents, so only one document is
+	 * processed at a time.
+	 */
+	public synchronized void findCoreferences(Document document){
 
 		//If document has no mentions, skip it.
 		boolean containsNoMentions = true;
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.common.nlp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ca.ualberta.entitylinking.common.data.Sentence;
+import ca.ualberta.entitylinking.common.data.Token;
+
+/**
+ * A cheap replacement of the tokenize and ssplit annotators of StanfordNER, for
+ * documents whose mentions are already known. Tokens are words (with inner
+ * apostrophes, hyphens and periods, e.g. "O'Neil" or "U.S.") or single symbols,
+ * and a sentence ends at a ".", "!" or "?" token (but not at the period of a
+ * title such as "Mr."). The tokens have no POS, lemma
+ * or NER annotations.
+ */
+public class SimpleTokenizer {
+	private static final Pattern TOKEN = Pattern.compile("[\\p{L}\\p{N}]+(?:['\\u2019.\\-][\\p{L}\\p{N}]+)*\\.?|\\S");
+	//e.g. "U.S.", which keeps its trailing period.
+	private static final Pattern ACRONYM = Pattern.compile("(?:\\p{L}\\.){2,}");
+	//abbreviations followed by a period that does not end the sentence.
+	private static final Set<String> TITLES = new HashSet<String>(Arrays.asList(
+			"Mr", "Mrs", "Ms", "Dr", "Prof", "St", "Jr", "Sr", "Inc", "Corp", "Co", "Ltd", "vs", "Gen", "Gov", "Sen", "Rep"));
+
+	/**
+	 * @param text
+	 * @return The sentences of the text, the token offsets are into the text.
+	 */
+	public static List<Sentence> tokenize(String text) {
+		List<Sentence> sentences = new ArrayList<Sentence>();
+		if (text == null)
+			return sentences;
+
+		List<Token> tokens = new ArrayList<Token>();
+		Matcher matcher = TOKEN.matcher(text);
+		while (matcher.find()) {
+			String word = matcher.group();
+			int bPos = matcher.start();
+			int ePos = matcher.end();
+
+			//a trailing period is a token of its own, unless the word is an acronym.
+			if (word.length() > 1 && word.endsWith(".") && !ACRONYM.matcher(word).matches()) {
+				word = word.substring(0, word.length() - 1);
+				ePos--;
+				matcher.region(ePos, text.length());
+			}
+
+			//the end position is inclusive, as in StanfordNER.
+			tokens.add(new Token(word, tokens.size(), bPos, ePos - 1));
+
+			boolean title = tokens.size() > 1 && TITLES.contains(tokens.get(tokens.size() - 2).getText());
+			if ((word.equals(".") && !title) || word.equals("!") || word.equals("?")) {
+				sentences.add(new Sentence(tokens));
+				tokens = new ArrayList<Token>();
+			}
+		}
+
+		if (!tokens.isEmpty())
+			sentences.add(new Sentence(tokens));
+
+		return sentences;
+	}
+}
@@ -19,6 +19,8 @@ import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 
 import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 public class WNEDConfig {
@@ -78,6 +80,33 @@ public class WNEDConfig {
     public static boolean directedGraph = false;
     //if we are using weighted or unweighted pagerank.
     public static boolean weighted = true;    
+    //the engine of the weighted pagerank: webgraph or csr (see PersonalizedPageRank.createWeighted).
+    public static String pprEngine = "webgraph";
+    //the number of workers computing the entity signatures, shared by all documents (see PageRankWorkers).
+    public static int pprThreads = 0;
+    //the iteration cap and the stopping threshold (L1 norm of a step) of the power method.
+    public static int pprMaxIter = 3;
+    public static double pprThreshold = 0.00001;
+    //the largest iteration cap picked from the size of the graph, 0 for pprMaxIter (see ConvergenceMonitor).
+    public static int adaptiveIterations = 0;
+    //the number of arcs the adaptive cap lets a run read, and the top ranks of the candidates to stop on once stable.
+    public static long adaptiveArcBudget = 10000000L;
+    public static int adaptiveTopK = 3;
+    //the number of largest ranks kept in each entity signature, 0 for dense signatures (see SemanticSignature).
+    public static int signatureTopK = 0;
+    //if the entity signatures are stored (and iterated by the csr engine) in single precision.
+    public static boolean singlePrecision = false;
+    //the store of precomputed signatures of popular entities (see GlobalSignatureBuilder), empty if not used.
+    public static String globalSignatures = "";
+    //the number of entity signatures iterated together by the csr engine, 0 or 1 for one at a time.
+    public static int pprBlockSize = 0;
+    //the residual threshold of the push engine, and the number of walks of the montecarlo engine.
+    public static double pushEpsilon = 0.0001;
+    public static int monteCarloWalks = 1000;
+    //the engines whose entity signatures are compared with the ones of pprEngine (none if empty).
+    public static List<String> compareEngines = new ArrayList<String>();
+    //if the similarities and the csr power method use the Vector API kernels (see Kernels).
+    public static boolean simdKernels = false;
     //define the levels of expansion when building the entity graph.
     public static int expandLevel = 1;
     //which context (e.g. whole document or surrounding sentences) are we using?
@@ -86,6 +115,52 @@ public class WNEDConfig {
     public static boolean NILPrediction = false;
     //NIL prediction model file
     public static String nilModel = null;
+    //if the mentions are found by StanfordNER, or the given mentions are used with a cheap tokenizer.
+    public static boolean useNER = true;
+    //if OrthoMatcher co-reference resolution is performed.
+    public static boolean useCoref = true;
+    //if repeated mentions (same name, type and candidates) are linked once per document.
+    public static boolean dedupMentions = false;
+    //if repeated mentions with different contexts are still linked separately.
+    public static boolean dedupKeepContext = false;
+    //the number of documents that are linked concurrently.
+    public static int linkingThreads = 1;
+    //the number of mentions of a document disambiguated concurrently (useIterative = 0 only).
+    public static int mentionThreads = 1;
+    //if we read and write the target file one document at a time.
+    public static boolean streaming = false;
+    //if we link the documents in a pipeline of stages (annotate, candidates, graph, rank).
+    public static boolean pipeline = false;
+    //the number of workers of each pipeline stage.
+    public static int annotateThreads = 2;
+    public static int candidateThreads = 1;
+    public static int graphThreads = 1;
+    public static int rankThreads = 1;
+    //the capacity of the queue in front of each pipeline stage.
+    public static int pipelineQueueSize = 4;
+    //the port of the linking server.
+    public static int serverPort = 8080;
+    //the number of requests the server keeps waiting for a linking slot before rejecting new ones.
+    public static int serverQueueSize = 64;
+    //the number of requests the server links at the same time.
+    public static int serverMaxConcurrent = 8;
+    //the longest a request waits for its response, queueing included (504 beyond that).
+    public static long serverTimeoutMs = 60000;
+    //the file the metrics are written to at the end of a run (the log if empty).
+    public static String metricsFile = null;
+    //the time budget of linking a document in milliseconds (0 for no limit), see LinkingContext.
+    public static long docDeadlineMs = 0;
+    //the directory of the startup snapshot (see StartupSnapshot), none if empty.
+    public static String snapshotDir = null;
+    //if each document signature of the mention by mention disambiguation starts from the previous one.
+    public static boolean warmStart = false;
+    //if the document signatures of a document are cached by their preference.
+    public static boolean signatureCache = true;
+    //if the document signatures are composed from the entity signatures instead of computed.
+    public static boolean composeSignatures = false;
+    //if each composed signature is compared to the computed one, and the largest L1 distance tolerated.
+    public static boolean verifyComposition = false;
+    public static double compositionTolerance = 0.01;
 
     public static void disable3rdPartyLibLogging() {
 		Logger.getLogger("es.yrbcn.graph.weighted.WeightedPageRankPowerMethod").setLevel(Level.OFF);
@@ -202,6 +277,138 @@ public class WNEDConfig {
         modelFile = systemDataPath + "/" + prop.getProperty("modelFile", "");
         nilModel = systemDataPath + "/" + prop.getProperty("nilModel", "");
         
+        value = prop.getProperty("useNER", "1");
+        if (value.equals("1"))
+            useNER = true;
+        else
+            useNER = false;
+
+        value = prop.getProperty("useCoref", "1");
+        if (value.equals("1"))
+            useCoref = true;
+        else
+            useCoref = false;
+
+        value = prop.getProperty("dedupMentions", "0");
+        if (value.equals("1"))
+            dedupMentions = true;
+        else
+            dedupMentions = false;
+
+        value = prop.getProperty("dedupKeepContext", "0");
+        if (value.equals("1"))
+            dedupKeepContext = true;
+        else
+            dedupKeepContext = false;
+
+        value = prop.getProperty("linkingThreads", "1");
+        linkingThreads = Integer.parseInt(value);
+        if (linkingThreads < 1)
+            linkingThreads = Runtime.getRuntime().availableProcessors();
+
+        value = prop.getProperty("mentionThreads", "1");
+        mentionThreads = Integer.parseInt(value);
+        if (mentionThreads < 1)
+            mentionThreads = Runtime.getRuntime().availableProcessors();
+
+        value = prop.getProperty("streaming", "0");
+        if (value.equals("1"))
+            streaming = true;
+        else
+            streaming = false;
+
+        value = prop.getProperty("pipeline", "0");
+        if (value.equals("1"))
+            pipeline = true;
+        else
+            pipeline = false;
+
+        annotateThreads = Integer.parseInt(prop.getProperty("annotateThreads", "2"));
+        candidateThreads = Integer.parseInt(prop.getProperty("candidateThreads", "1"));
+        graphThreads = Integer.parseInt(prop.getProperty("graphThreads", "1"));
+        rankThreads = Integer.parseInt(prop.getProperty("rankThreads", "1"));
+        pipelineQueueSize = Integer.parseInt(prop.getProperty("pipelineQueueSize", "4"));
+
+        serverPort = Integer.parseInt(prop.getProperty("serverPort", "8080"));
+        serverQueueSize = Integer.parseInt(prop.getProperty("serverQueueSize", "64"));
+        serverMaxConcurrent = Integer.parseInt(prop.getProperty("serverMaxConcurrent", "8"));
+        serverTimeoutMs = Long.parseLong(prop.getProperty("serverTimeoutMs", "60000"));
+
+        metricsFile = prop.getProperty("metricsFile", "");
+
+        docDeadlineMs = Long.parseLong(prop.getProperty("docDeadlineMs", "0"));
+
+        value = prop.getProperty("snapshotDir", "");
+        snapshotDir = value.isEmpty() ? "" : systemDataPath + "/" + value;
+
+        value = prop.getProperty("warmStart", "0");
+        if (value.equals("1"))
+            warmStart = true;
+        else
+            warmStart = false;
+
+        pprEngine = prop.getProperty("pprEngine", "webgraph").trim();
+
+        pprThreads = Integer.parseInt(prop.getProperty("pprThreads", "0"));
+
+        pprMaxIter = Integer.parseInt(prop.getProperty("pprMaxIter", "3"));
+
+        pprThreshold = Double.parseDouble(prop.getProperty("pprThreshold", "0.00001"));
+
+        adaptiveIterations = Integer.parseInt(prop.getProperty("adaptiveIterations", "0"));
+
+        adaptiveArcBudget = Long.parseLong(prop.getProperty("adaptiveArcBudget", "10000000"));
+
+        adaptiveTopK = Integer.parseInt(prop.getProperty("adaptiveTopK", "3"));
+
+        signatureTopK = Integer.parseInt(prop.getProperty("signatureTopK", "0"));
+
+        value = prop.getProperty("singlePrecision", "0");
+        if (value.equals("1"))
+            singlePrecision = true;
+        else
+            singlePrecision = false;
+
+        globalSignatures = prop.getProperty("globalSignatures", "").trim();
+
+        pprBlockSize = Integer.parseInt(prop.getProperty("pprBlockSize", "0"));
+
+        pushEpsilon = Double.parseDouble(prop.getProperty("pushEpsilon", "0.0001"));
+
+        monteCarloWalks = Integer.parseInt(prop.getProperty("monteCarloWalks", "1000"));
+
+        value = prop.getProperty("simdKernels", "0");
+        if (value.equals("1"))
+            simdKernels = true;
+        else
+            simdKernels = false;
+
+        compareEngines = new ArrayList<String>();
+        for (String engine : prop.getProperty("compareEngines", "").split(",")) {
+            if (!engine.trim().isEmpty())
+                compareEngines.add(engine.trim());
+        }
+
+        value = prop.getProperty("signatureCache", "1");
+        if (value.equals("1"))
+            signatureCache = true;
+        else
+            signatureCache = false;
+
+        value = prop.getProperty("composeSignatures", "0");
+        if (value.equals("1"))
+            composeSignatures = true;
+        else
+            composeSignatures = false;
+
+        value = prop.getProperty("verifyComposition", "0");
+        if (value.equals("1"))
+            verifyComposition = true;
+        else
+            verifyComposition = false;
+
+        compositionTolerance = Double.parseDouble(prop.getProperty("compositionTolerance", "0.01"));
+
         targetFile = prop.getProperty("targetFile", "");
 
         //get the RawText directory.
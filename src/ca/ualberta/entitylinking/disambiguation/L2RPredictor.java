@@ -40,7 +40,7 @@ public class L2RPredictor {
 		System.out.println("Done with loading the prediction model");
 	}
 
-	public int predict(List<Feature> instances) {
+	public synchronized int predict(List<Feature> instances) {
 		RankList rankList = readSample(instances);
 		nml.normalize(rankList);
 		
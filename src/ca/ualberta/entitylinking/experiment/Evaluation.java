@@ -16,6 +16,8 @@
 package ca.ualberta.entitylinking.experiment;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -83,12 +85,7 @@ public class Evaluation {
 			return;
 		}
 
-		int totalQueries = 0;
-		int totalCorrect = 0;
-		int totalFound = 0;
-		int totalDocs = 0;
-		double precision = 0.0, recall = 0.0, f1 = 0.0;
-		
+		Accumulator acc = new Accumulator();
 		for (int i = 0; i < docNL.getLength(); i++) {
 			//get the annotations of each document.
 			Element docEle = (Element)docNL.item(i);
@@ -98,13 +95,46 @@ public class Evaluation {
 			if (annoteNL == null || annoteNL.getLength() <= 0)
 				continue;
 
-			int correct = 0, query = 0, found = 0;
-			
+			List<String> wikiNames = new ArrayList<String>();
+			List<String> entities = new ArrayList<String>();
 			for (int j = 0; j < annoteNL.getLength(); j++) {
 				Element annoteEle = (Element) annoteNL.item(j);
 
-				String wikiName = XmlProcessor.getTextValue(annoteEle, "wikiName");
-				String entity = XmlProcessor.getTextValue(annoteEle, "entity");
+				wikiNames.add(XmlProcessor.getTextValue(annoteEle, "wikiName"));
+				entities.add(XmlProcessor.getTextValue(annoteEle, "entity"));
+			}
+
+			acc.addDocument(docEle.getAttribute("docName"), wikiNames, entities);
+		}
+
+		acc.report();
+	}
+
+	/**
+	 * Accumulates the accuracy measures one document at a time, so that the
+	 * results can be evaluated while they are being produced.
+	 */
+	public static class Accumulator {
+		int totalQueries = 0;
+		int totalCorrect = 0;
+		int totalFound = 0;
+		int totalDocs = 0;
+		//sum of the per-document precision and recall (macro average).
+		double precisionSum = 0.0, recallSum = 0.0;
+
+		/**
+		 * Add the results of one document.
+		 *
+		 * @param docName
+		 * @param wikiNames The true entities of the mentions.
+		 * @param entities The linked entities, in the same order.
+		 */
+		public synchronized void addDocument(String docName, List<String> wikiNames, List<String> entities) {
+			int correct = 0, query = 0, found = 0;
+
+			for (int j = 0; j < wikiNames.size(); j++) {
+				String wikiName = wikiNames.get(j);
+				String entity = entities.get(j);
 
 				if (wikiName != null && (wikiName.equals("NIL")||wikiName.isEmpty()))
 					wikiName = null;
@@ -128,36 +158,48 @@ public class Evaluation {
 				}
 			}
 			
-			if (query == 0)	continue;
-			if (found == 0)
-				precision += 0;
-			else
-				precision += correct * 1.0 / found;
+			if (query == 0)	return;
+			if (found > 0)
+				precisionSum += correct * 1.0 / found;
 			
-			recall += correct * 1.0 / query;
+			recallSum += correct * 1.0 / query;
 			
 			totalDocs++;
-			String docName = docEle.getAttribute("docName");
 			LOGGER.info(docName + ": " + correct*1.0/query);
 		}
 
-        LOGGER.info("Acuracy: " + (totalCorrect*1.0/totalQueries));
+		public synchronized int getDocuments() {
+			return totalDocs;
+		}
+
+		public synchronized double getAccuracy() {
+			return totalCorrect*1.0/totalQueries;
+		}
+
+		/**
+		 * Log the accuracy, macro and micro measures of the documents seen so far.
+		 */
+		public synchronized void report() {
+			double precision = 0.0, recall = 0.0, f1 = 0.0;
 
-		precision = precision / totalDocs;
-		recall = recall / totalDocs;
-		f1 = 2 * precision * recall / (precision + recall);
+			LOGGER.info("Acuracy: " + getAccuracy());
 
-        LOGGER.info("MA#Precision: " + precision);
-        LOGGER.info("MA#Recall: " + recall);
-        LOGGER.info("MA#F1: " + f1);
-		
-		precision = totalCorrect * 1.0 / totalFound;
-		recall = totalCorrect * 1.0 / totalQueries;
-		f1 = 2 * precision * recall / (precision + recall);
+			precision = precisionSum / totalDocs;
+			recall = recallSum / totalDocs;
+			f1 = 2 * precision * recall / (precision + recall);
 
-        LOGGER.info("MI#Precision: " + precision);
-        LOGGER.info("MI#Recall: " + recall);
-        LOGGER.info("MI#F1: " + f1);
+			LOGGER.info("MA#Precision: " + precision);
+			LOGGER.info("MA#Recall: " + recall);
+			LOGGER.info("MA#F1: " + f1);
+			
+			precision = totalCorrect * 1.0 / totalFound;
+			recall = totalCorrect * 1.0 / totalQueries;
+			f1 = 2 * precision * recall / (precision + recall);
+
+			LOGGER.info("MI#Precision: " + precision);
+			LOGGER.info("MI#Recall: " + recall);
+			LOGGER.info("MI#F1: " + f1);
+		}
 	}
 	
 	public static void main(String[] args) {
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.experiment;
+
+import java.util.Random;
+
+import ca.ualberta.entitylinking.utils.similarity.Kernels;
+
+/**
+ * Compare the scalar kernels with the Vector API ones (see Kernels) on vectors
+ * of the size of semantic signatures, i.e. the number of nodes of document graphs.
+ * The vectors look like signatures: most of the mass on a few nodes, and a third
+ * of the nodes at 0.
+ *
+ * java --add-modules jdk.incubator.vector -cp $CP ca.ualberta.entitylinking.experiment.KernelBenchmark [sizes...]
+ */
+public class KernelBenchmark {
+	//the number of elements processed by each timed round of a kernel.
+	private static final long ROUND_ELEMENTS = 50000000L;
+	private static final int ROUNDS = 5;
+
+	//keeps the results alive, so the kernels are not optimized away.
+	private static double sink = 0.0;
+
+	private static double[] signature(Random random, int n) {
+		double[] v = new double[n];
+		double sum = 0.0;
+		for (int i = 0; i < n; i++) {
+			if (random.nextInt(3) == 0)
+				continue;
+
+			v[i] = Math.pow(random.nextDouble(), 8);
+			sum += v[i];
+		}
+
+		for (int i = 0; i < n; i++)
+			v[i] /= sum;
+
+		return v;
+	}
+
+	/**
+	 * @return The best time of the kernel in nanoseconds per element.
+	 */
+	private static double time(Kernels kernels, String kernel, double[] p, double[] q, double[] y) {
+		int n = p.length;
+		long reps = Math.max(1, ROUND_ELEMENTS / n);
+		double best = Double.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++) {
+			long begin = System.nanoTime();
+			for (long r = 0; r < reps; r++) {
+				if (kernel.equals("dot"))
+					sink += kernels.dot(p, q, n);
+				else if (kernel.equals("distanceL1"))
+					sink += kernels.distanceL1(p, q, n);
+				else if (kernel.equals("zeroKL"))
+					sink += kernels.zeroKL(p, q, n);
+				else
+					kernels.scaleAdd(y, 0.85, p, 0.15, n);
+			}
+			best = Math.min(best, (double) (System.nanoTime() - begin) / (reps * n));
+		}
+
+		return best;
+	}
+
+	public static void main(String[] args) {
+		int[] sizes = {1000, 10000, 100000, 1000000};
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+
+		Kernels scalar = Kernels.scalar();
+		Kernels vector = Kernels.vector();
+		if (vector == null) {
+			System.out.println("The vector kernels are not available: build with -P jdk17, and run "
+					+ "with --add-modules jdk.incubator.vector.");
+			return;
+		}
+		System.out.println("scalar vs. " + vector.getName());
+
+		String[] kernels = {"dot", "distanceL1", "zeroKL", "scaleAdd"};
+		Random random = new Random(0);
+		System.out.println(String.format("%-12s %10s %14s %14s %10s %12s",
+				"kernel", "size", "scalar ns/el", "vector ns/el", "speedup", "rel. diff"));
+		for (int n : sizes) {
+			double[] p = signature(random, n);
+			double[] q = signature(random, n);
+			double[] y = new double[n];
+
+			for (String kernel : kernels) {
+				//the first pass warms up both kernels.
+				time(scalar, kernel, p, q, y);
+				time(vector, kernel, p, q, y);
+				double s = time(scalar, kernel, p, q, y);
+				double v = time(vector, kernel, p, q, y);
+
+				double diff = 0.0;
+				if (kernel.equals("dot"))
+					diff = relDiff(scalar.dot(p, q, n), vector.dot(p, q, n));
+				else if (kernel.equals("distanceL1"))
+					diff = relDiff(scalar.distanceL1(p, q, n), vector.distanceL1(p, q, n));
+				else if (kernel.equals("zeroKL"))
+					diff = relDiff(scalar.zeroKL(p, q, n), vector.zeroKL(p, q, n));
+
+				System.out.println(String.format("%-12s %10d %14.3f %14.3f %9.2fx %12.2e",
+						kernel, n, s, v, s / v, diff));
+			}
+		}
+
+		if (sink == 42.0)
+			System.out.println();
+	}
+
+	private static double relDiff(double a, double b) {
+		return a == b ? 0.0 : Math.abs(a - b) / Math.max(Math.abs(a), Math.abs(b));
+	}
+}
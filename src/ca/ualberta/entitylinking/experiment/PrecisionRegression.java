@@ -0,0 +1,254 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.experiment;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import ca.ualberta.entitylinking.SemanticSignatureEL;
+import ca.ualberta.entitylinking.config.WNEDConfig;
+import ca.ualberta.entitylinking.utils.Histogram;
+import ca.ualberta.entitylinking.utils.Metrics;
+import ca.ualberta.entitylinking.utils.XmlProcessor;
+
+/**
+ * The accuracy regressions of the approximations of the entity signatures.
+ *
+ * By default, it links the query file (targetFile) of the configuration with the
+ * signatures in double and in single precision (singlePrecision), at each of the
+ * given expansion levels. For each level it reports the accuracy of both runs,
+ * the mentions linked to a different entity (and how many of them got fixed or
+ * broken), the memory of the entity signatures per document and the linking time.
+ *
+ * With -engines, it links each of the given benchmark query files (targetFile if
+ * none) with pprEngine, and with each engine of compareEngines instead. For each
+ * engine it reports the same accuracy figures, next to the mean L1 error of its
+ * signatures against the ones of pprEngine (engine.<name>.errorPpm, from one more
+ * run of pprEngine comparing the engines).
+ *
+ * The differing mentions are listed after the table.
+ *
+ * java -cp $CP ca.ualberta.entitylinking.experiment.PrecisionRegression el.config [expandLevel...]
+ * java -cp $CP ca.ualberta.entitylinking.experiment.PrecisionRegression el.config -engines [queryFile...]
+ */
+public class PrecisionRegression {
+	/**
+	 * The results of one run over a query file.
+	 */
+	private static class Run {
+		//docName, mention, wikiName and entity of each annotation.
+		List<String[]> annotations = new ArrayList<String[]>();
+		double accuracy = 0.0;
+		double signatureBytes = 0.0;
+		long timeMs = 0;
+	}
+
+	/**
+	 * @return The count and the sum of the values of a metric.
+	 */
+	private static long[] values(String name) {
+		Histogram h = Metrics.getValues(name);
+		return h == null ? new long[] {0, 0} : new long[] {h.getCount(), h.getSum()};
+	}
+
+	/**
+	 * @param before The values() of the metric before the run.
+	 * @return The mean of the values of the metric recorded since, NaN if none.
+	 */
+	private static double mean(String name, long[] before) {
+		long[] after = values(name);
+		if (after[0] <= before[0])
+			return Double.NaN;
+
+		return (double) (after[1] - before[1]) / (after[0] - before[0]);
+	}
+
+	/**
+	 * Link a query file with the current configuration.
+	 */
+	private static Run run(SemanticSignatureEL linker, String queryFile) {
+		long[] bytes = values("signatureBytes");
+
+		Run run = new Run();
+		long begin = System.nanoTime();
+		String outFile = linker.linking(queryFile);
+		run.timeMs = (System.nanoTime() - begin) / 1000000;
+
+		double mean = mean("signatureBytes", bytes);
+		run.signatureBytes = Double.isNaN(mean) ? 0.0 : mean;
+
+		Evaluation.Accumulator acc = new Evaluation.Accumulator();
+		try {
+			Element rootEle = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+					.parse(outFile).getDocumentElement();
+			NodeList docNL = rootEle.getElementsByTagName("document");
+			for (int i = 0; i < docNL.getLength(); i++) {
+				Element docEle = (Element) docNL.item(i);
+				String docName = docEle.getAttribute("docName");
+				NodeList annoteNL = docEle.getElementsByTagName("annotation");
+
+				List<String> wikiNames = new ArrayList<String>();
+				List<String> entities = new ArrayList<String>();
+				for (int j = 0; j < annoteNL.getLength(); j++) {
+					Element annoteEle = (Element) annoteNL.item(j);
+					String wikiName = XmlProcessor.getTextValue(annoteEle, "wikiName");
+					String entity = XmlProcessor.getTextValue(annoteEle, "entity");
+
+					wikiNames.add(wikiName);
+					entities.add(entity);
+					run.annotations.add(new String[] {docName,
+							XmlProcessor.getTextValue(annoteEle, "mention"), wikiName, entity});
+				}
+
+				acc.addDocument(docName, wikiNames, entities);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		run.accuracy = acc.getAccuracy();
+
+		return run;
+	}
+
+	private static boolean same(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * Compare the annotations of two runs, and list the differing mentions.
+	 *
+	 * @param label The label of the differences, e.g. the level of the runs.
+	 * @return The number of mentions linked differently, fixed and broken by other.
+	 */
+	private static int[] diff(Run base, Run other, String label, String baseName, String otherName,
+			List<String> changes) {
+		int changed = 0, fixed = 0, broken = 0;
+		for (int i = 0; i < base.annotations.size() && i < other.annotations.size(); i++) {
+			String[] a = base.annotations.get(i);
+			String[] b = other.annotations.get(i);
+			if (same(a[3], b[3]))
+				continue;
+
+			changed++;
+			if (same(b[3], b[2]))
+				fixed++;
+			else if (same(a[3], a[2]))
+				broken++;
+			changes.add(label + "\t" + a[0] + "\t" + a[1] + "\t" + a[2]
+					+ "\t" + baseName + ": " + a[3] + "\t" + otherName + ": " + b[3]);
+		}
+
+		return new int[] {changed, fixed, broken};
+	}
+
+	private static void comparePrecision(SemanticSignatureEL linker, int[] levels,
+			List<String> table, List<String> changes) {
+		table.add(String.format("%-6s %10s %10s %9s %8s %7s %7s %12s %12s %10s %10s",
+				"level", "acc double", "acc float", "delta", "changed", "fixed", "broken",
+				"sig KB dbl", "sig KB flt", "ms double", "ms float"));
+		for (int level : levels) {
+			WNEDConfig.expandLevel = level;
+			WNEDConfig.singlePrecision = false;
+			Run dbl = run(linker, WNEDConfig.targetFile);
+			WNEDConfig.singlePrecision = true;
+			Run flt = run(linker, WNEDConfig.targetFile);
+
+			int[] d = diff(dbl, flt, "level " + level, "double", "float", changes);
+			table.add(String.format("%-6d %10.4f %10.4f %+9.4f %8d %7d %7d %12.1f %12.1f %10d %10d",
+					level, dbl.accuracy, flt.accuracy, flt.accuracy - dbl.accuracy, d[0], d[1], d[2],
+					dbl.signatureBytes / 1024, flt.signatureBytes / 1024, dbl.timeMs, flt.timeMs));
+		}
+	}
+
+	private static void compareEngines(SemanticSignatureEL linker, List<String> queryFiles,
+			List<String> table, List<String> changes) {
+		String baseEngine = WNEDConfig.pprEngine;
+		List<String> engines = new ArrayList<String>(WNEDConfig.compareEngines);
+
+		table.add(String.format("%-24s %-12s %10s %10s %9s %8s %7s %7s %12s %10s %10s",
+				"dataset", "engine", "acc " + baseEngine, "acc engine", "delta", "changed", "fixed", "broken",
+				"errorPpm", "ms base", "ms engine"));
+		for (String queryFile : queryFiles) {
+			String dataset = new File(queryFile).getName();
+
+			WNEDConfig.pprEngine = baseEngine;
+			WNEDConfig.compareEngines = new ArrayList<String>();
+			Run base = run(linker, queryFile);
+
+			//the signature error of the engines, against the ones of pprEngine.
+			List<long[]> errors = new ArrayList<long[]>();
+			for (String engine : engines)
+				errors.add(values("engine." + engine + ".errorPpm"));
+			WNEDConfig.compareEngines = engines;
+			run(linker, queryFile);
+			WNEDConfig.compareEngines = new ArrayList<String>();
+
+			for (int i = 0; i < engines.size(); i++) {
+				String engine = engines.get(i);
+				double errorPpm = mean("engine." + engine + ".errorPpm", errors.get(i));
+
+				WNEDConfig.pprEngine = engine;
+				Run other = run(linker, queryFile);
+				WNEDConfig.pprEngine = baseEngine;
+
+				int[] d = diff(base, other, dataset, baseEngine, engine, changes);
+				table.add(String.format("%-24s %-12s %10.4f %10.4f %+9.4f %8d %7d %7d %12.0f %10d %10d",
+						dataset, engine, base.accuracy, other.accuracy, other.accuracy - base.accuracy,
+						d[0], d[1], d[2], errorPpm, base.timeMs, other.timeMs));
+			}
+		}
+
+		WNEDConfig.compareEngines = engines;
+	}
+
+	public static void main(String[] args) {
+		SemanticSignatureEL linker = new SemanticSignatureEL(args[0]);
+
+		List<String> table = new ArrayList<String>();
+		List<String> changes = new ArrayList<String>();
+		if (args.length > 1 && args[1].equals("-engines")) {
+			List<String> queryFiles = new ArrayList<String>();
+			for (int i = 2; i < args.length; i++)
+				queryFiles.add(args[i]);
+			if (queryFiles.isEmpty())
+				queryFiles.add(WNEDConfig.targetFile);
+
+			if (WNEDConfig.compareEngines.isEmpty() || !WNEDConfig.weighted)
+				System.err.println("Set compareEngines (and weighted = 1) to compare the engines");
+			compareEngines(linker, queryFiles, table, changes);
+		} else {
+			int[] levels = {WNEDConfig.expandLevel};
+			if (args.length > 1) {
+				levels = new int[args.length - 1];
+				for (int i = 1; i < args.length; i++)
+					levels[i - 1] = Integer.parseInt(args[i]);
+			}
+			comparePrecision(linker, levels, table, changes);
+		}
+
+		for (String line : table)
+			System.out.println(line);
+		System.out.println();
+		for (String line : changes)
+			System.out.println(line);
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.graph;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import it.unimi.dsi.webgraph.ImmutableGraph;
+import it.unimi.dsi.webgraph.LazyIntIterator;
+import it.unimi.dsi.webgraph.NodeIterator;
+
+/**
+ * An immutable graph held in memory as sorted successor arrays (the successors
+ * of node i are successors[offsets[i], offsets[i+1])), for the document subgraphs
+ * of the unweighted pagerank. Unlike a BVGraph, it is built straight from the
+ * adjacency sets, without an ASCII representation or files.
+ *
+ * The arrays are never modified, so copies share them and can be read concurrently.
+ * The node iterators (which the pagerank of LAW scans) and successorArray(),
+ * successorOffset() read the successors without copying them.
+ */
+public class ArrayGraph extends ImmutableGraph {
+	private int numNodes = 0;
+	private int[] offsets = null;
+	private int[] successors = null;
+
+	private ArrayGraph() {
+	}
+
+	/**
+	 * @param adjacency The successors of each node, by node id. Nodes without
+	 * 		successors can be left out.
+	 * @param numNodes The number of nodes.
+	 */
+	public ArrayGraph(Map<Integer, Set<Integer>> adjacency, int numNodes) {
+		this.numNodes = numNodes;
+		offsets = new int[numNodes + 1];
+
+		int numArcs = 0;
+		for (int i = 0; i < numNodes; i++) {
+			Set<Integer> set = adjacency == null ? null : adjacency.get(i);
+			numArcs += set == null ? 0 : set.size();
+			offsets[i + 1] = numArcs;
+		}
+
+		successors = new int[numArcs];
+		for (int i = 0; i < numNodes; i++) {
+			Set<Integer> set = adjacency == null ? null : adjacency.get(i);
+			if (set == null)
+				continue;
+
+			int k = offsets[i];
+			for (Integer j : set)
+				successors[k++] = j;
+			//the successor lists of webgraph are sorted.
+			Arrays.sort(successors, offsets[i], k);
+		}
+	}
+
+	public int numNodes() {
+		return numNodes;
+	}
+
+	public long numArcs() {
+		return successors.length;
+	}
+
+	public boolean randomAccess() {
+		return true;
+	}
+
+	public int outdegree(int x) {
+		return offsets[x + 1] - offsets[x];
+	}
+
+	/**
+	 * A copy of the successors of x. To read them without copying, see
+	 * successorArray() and successorOffset().
+	 */
+	public int[] successorArray(int x) {
+		return Arrays.copyOfRange(successors, offsets[x], offsets[x + 1]);
+	}
+
+	/**
+	 * @return The successors of all the nodes, shared and never modified: the
+	 * 		successors of x are at [successorOffset(x), successorOffset(x) + outdegree(x)).
+	 */
+	public int[] successorArray() {
+		return successors;
+	}
+
+	public int successorOffset(int x) {
+		return offsets[x];
+	}
+
+	/**
+	 * The successor arrays of the iterator reuse a single buffer, which only
+	 * holds the successors of the current node.
+	 */
+	public NodeIterator nodeIterator(final int from) {
+		return new NodeIterator() {
+			int curr = from - 1;
+			int[] buffer = new int[0];
+
+			public boolean hasNext() {
+				return curr < numNodes - 1;
+			}
+
+			public int nextInt() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+
+				return ++curr;
+			}
+
+			public int outdegree() {
+				checkCurrent();
+				return ArrayGraph.this.outdegree(curr);
+			}
+
+			public LazyIntIterator successors() {
+				checkCurrent();
+				return ArrayGraph.this.successors(curr);
+			}
+
+			public int[] successorArray() {
+				checkCurrent();
+				int degree = ArrayGraph.this.outdegree(curr);
+				if (buffer.length < degree)
+					buffer = new int[Math.max(degree, 2 * buffer.length)];
+				System.arraycopy(successors, offsets[curr], buffer, 0, degree);
+
+				return buffer;
+			}
+
+			private void checkCurrent() {
+				if (curr == from - 1)
+					throw new IllegalStateException();
+			}
+		};
+	}
+
+	public LazyIntIterator successors(int x) {
+		final int end = offsets[x + 1];
+		final int[] pos = {offsets[x]};
+
+		return new LazyIntIterator() {
+			public int nextInt() {
+				return pos[0] < end ? successors[pos[0]++] : -1;
+			}
+
+			public int skip(int n) {
+				int skipped = Math.min(n, end - pos[0]);
+				pos[0] += skipped;
+				return skipped;
+			}
+		};
+	}
+
+	public ImmutableGraph copy() {
+		ArrayGraph copy = new ArrayGraph();
+		copy.numNodes = numNodes;
+		copy.offsets = offsets;
+		copy.successors = successors;
+
+		return copy;
+	}
+}
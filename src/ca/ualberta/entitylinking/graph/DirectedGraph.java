@@ -22,9 +22,7 @@ import it.unimi.dsi.webgraph.labelling.BitStreamArcLabelledImmutableGraph;
 import it.unimi.dsi.webgraph.labelling.Label;
 
 import java.io.BufferedReader;
-import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.ObjectOutputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -37,6 +35,7 @@ public class DirectedGraph extends WeightedGraph {
 
     String graphPath2 = null;
 	ArcLabelledImmutableGraph bitgraph2 = null;
+	ThreadLocal<ArcLabelledImmutableGraph> localGraph2 = null;
 
 	public DirectedGraph(String graphPath) {
 		super(graphPath);
@@ -97,15 +96,7 @@ public class DirectedGraph extends WeightedGraph {
 				id2name.put(name2id.get(name), name);
 			
 			//write the mapping into a file.
-			ObjectOutputStream output = new ObjectOutputStream(
-					new FileOutputStream(graphPath + ".map.name2id"));
-			output.writeObject(name2id);
-			output.close();
-			
-			output = new ObjectOutputStream(
-					new FileOutputStream(graphPath + ".map.id2name"));
-			output.writeObject(id2name);
-			output.close();
+			storeNameIDMap();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -121,6 +112,8 @@ public class DirectedGraph extends WeightedGraph {
 				bitgraph = BitStreamArcLabelledImmutableGraph.load(graphPath);
 				bitgraph2 = BitStreamArcLabelledImmutableGraph.load(graphPath2);
 			}
+			localGraph = threadLocalCopy(bitgraph);
+			localGraph2 = threadLocalCopy(bitgraph2);
 
 			if (bitgraph.randomAccess())
 				LOGGER.info("Support random access!");
@@ -152,9 +145,9 @@ public class DirectedGraph extends WeightedGraph {
 		
 		ArcLabelledImmutableGraph g = null;
 		if (out)
-			g = bitgraph;
+			g = graph();
 		else
-			g = bitgraph2;
+			g = localGraph2.get();
 
 		return g.outdegree(id);
 	}
@@ -177,9 +170,9 @@ public class DirectedGraph extends WeightedGraph {
 		
 		ArcLabelledImmutableGraph g = null;
 		if (out)
-			g = bitgraph;
+			g = graph();
 		else
-			g = bitgraph2;
+			g = localGraph2.get();
 
 		int outDegree = g.outdegree(id);
 		int[] ret = new int[outDegree];
@@ -206,9 +199,9 @@ public class DirectedGraph extends WeightedGraph {
 
 		ArcLabelledImmutableGraph g = null;
 		if (out)
-			g = bitgraph;
+			g = graph();
 		else
-			g = bitgraph2;
+			g = localGraph2.get();
 		
 		ArcLabelledNodeIterator.LabelledArcIterator iter = g.successors(src);
 		Map<String, Integer> map = new HashMap<String, Integer>();
@@ -235,11 +228,17 @@ public class DirectedGraph extends WeightedGraph {
 	 * GraphName is defined in the configuration file.
 	 * @param argv
 	 * 		argv[0] is the config file: e.g. el.config
-	 * 		argv[1] is the graph file to be saved.
+	 * 		argv[1] is the graph file to be saved, or -names to only write the name
+	 * 		table of a graph stored with the serialized maps.
 	 */
 	public static void main(String[] argv) {
 		WNEDConfig.loadConfiguration(argv[0]);
 		DirectedGraph graph = new DirectedGraph(WNEDConfig.linkGraphLoc);
-		graph.storeGraph(argv[1]);
+		if (argv[1].equals("-names")) {
+			graph.loadOffline();
+			graph.storeNameIDMap();
+		} else {
+			graph.storeGraph(argv[1]);
+		}
 	}
 }
@@ -16,6 +16,7 @@
 package ca.ualberta.entitylinking.graph;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -49,7 +50,17 @@ public class GraphUtils {
 
 
 	public static BVGraph createBVGraph(InputStream input) {
-		String basename = "tempDest";
+		//Use a unique basename, so that concurrent documents do not overwrite
+		//each other's graph files.
+		String basename = null;
+		try {
+			File tmp = File.createTempFile("wned-subgraph", "");
+			tmp.delete();
+			basename = tmp.getPath();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
 
 		//Load the graph file, and then convert it to the BVGraph.
 		try {
@@ -66,6 +77,11 @@ public class GraphUtils {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
+
+		//the graph is in memory now, remove the temporary files.
+		for (String ext : new String[] {BVGraph.GRAPH_EXTENSION,
+				BVGraph.OFFSETS_EXTENSION, BVGraph.PROPERTIES_EXTENSION})
+			new File(basename + ext).delete();
 		
 		return g;
 	}
@@ -97,12 +113,20 @@ public class GraphUtils {
      */
 	public static List<Triple> buildWeightedGraph(SubGraphGenerator gg, Set<String> entities,
 			Map<String, Integer> e2id) {
+		return buildWeightedGraph(gg, entities, e2id, WNEDConfig.expandLevel);
+	}
+
+	/**
+	 * @param level The levels of expansion, overriding expandLevel.
+	 */
+	public static List<Triple> buildWeightedGraph(SubGraphGenerator gg, Set<String> entities,
+			Map<String, Integer> e2id, int level) {
 		
 		List<Triple> graph = null;
 		if (WNEDConfig.directedGraph)
-			graph = gg.generateExpandedWeightedDirectedGraph(entities, e2id, WNEDConfig.expandLevel);
+			graph = gg.generateExpandedWeightedDirectedGraph(entities, e2id, level);
 		else
-			graph = gg.generateExpandedWeightedUndirectedGraph(entities, e2id, WNEDConfig.expandLevel);
+			graph = gg.generateExpandedWeightedUndirectedGraph(entities, e2id, level);
 
 		if (entities.isEmpty() || graph == null || graph.isEmpty())
 			return null;
@@ -115,15 +139,30 @@ public class GraphUtils {
 		return graph;
 	}
 	
-	public static BVGraph buildUnweightedGraph(SubGraphGenerator gg, Set<String> entities,
+	/**
+	 * Build the subgraph around entities as an in-memory graph (see ArrayGraph).
+	 *
+	 * @param entities The core component of the subgraph
+	 * @param e2id A name to id mapping for entities.
+	 * @return The graph.
+	 */
+	public static ImmutableGraph buildUnweightedGraph(SubGraphGenerator gg, Set<String> entities,
 			Map<String, Integer> e2id) {
-		String graphStr = null;
+		return buildUnweightedGraph(gg, entities, e2id, WNEDConfig.expandLevel);
+	}
+
+	/**
+	 * @param level The levels of expansion, overriding expandLevel.
+	 */
+	public static ImmutableGraph buildUnweightedGraph(SubGraphGenerator gg, Set<String> entities,
+			Map<String, Integer> e2id, int level) {
+		Map<Integer, Set<Integer>> adjacency = null;
 		if (WNEDConfig.directedGraph)
-			graphStr = gg.generateExpandedDirectedGraph(entities, e2id, WNEDConfig.expandLevel);
+			adjacency = gg.generateExpandedDirectedAdjacency(entities, e2id, level);
 		else
-			graphStr = gg.generateExpandedUndirectedGraph(entities, e2id, WNEDConfig.expandLevel);
+			adjacency = gg.generateExpandedUndirectedAdjacency(entities, e2id, level);
 
-		BVGraph graph = createBVGraph(graphStr); 
+		ImmutableGraph graph = new ArrayGraph(adjacency, e2id.size());
         LOGGER.info("Interested entities: " + entities.size());
         LOGGER.info("Graph nodes: " + graph.numNodes());
         LOGGER.info("Graph edges: " + graph.numArcs());
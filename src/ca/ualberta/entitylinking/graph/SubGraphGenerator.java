@@ -30,8 +30,6 @@ public class SubGraphGenerator {
 	private int in_threshold = 200;
 	private int undirect_threshold = 600;
 	
-	private int nodeID = 0;
-	
 	private WeightedGraph graph = null;
 	private ParallelRelatednessComputation measurer = null;
 	
@@ -80,14 +78,14 @@ public class SubGraphGenerator {
 				continue;
 
 			if (id1 < 0) {
-				id1 = nodeID++;
+				id1 = nameIDMap.size();
 				nameIDMap.put(name1, id1);
 			}
 
 			if (nameIDMap.containsKey(name2)) {
 				id2 = nameIDMap.get(name2);
 			} else {
-				id2 = nodeID++;
+				id2 = nameIDMap.size();
 				nameIDMap.put(name2, id2);
 			}
 
@@ -106,8 +104,6 @@ public class SubGraphGenerator {
 			Set<String> expandedSet, Map<String, Integer> nameIDMap) {
 		List<Triple> g = new ArrayList<Triple>();
 
-		nodeID = 0;
-
 		//now build the graph out of the entities in the expanded set.
 		for (String name : entities) {
 			//inlinks
@@ -291,14 +287,14 @@ public class SubGraphGenerator {
 				continue;
 
 			if (id1 < 0) {
-				id1 = nodeID++;
+				id1 = nameIDMap.size();
 				nameIDMap.put(name1, id1);
 			}
 
 			if (nameIDMap.containsKey(name2)) {
 				id2 = nameIDMap.get(name2);
 			} else {
-				id2 = nodeID++;
+				id2 = nameIDMap.size();
 				nameIDMap.put(name2, id2);
 			}
 
@@ -327,8 +323,6 @@ public class SubGraphGenerator {
 			Set<String> expandedSet, Map<String, Integer> nameIDMap) {
 		Map<Integer, Set<Integer>> g = new HashMap<Integer, Set<Integer>>();
 
-		nodeID = 0;
-
 		//now build the graph out of the entities in the expanded set.
 		for (String name : entities) {
 			//inlinks
@@ -442,13 +436,20 @@ public class SubGraphGenerator {
 	public String generateExpandedUndirectedGraph(Set<String> entities, 
 			Map<String, Integer> nameIDMap, int level) {
 		
-		Map<Integer, Set<Integer>> g = null;
+		Map<Integer, Set<Integer>> g = generateExpandedUndirectedAdjacency(entities, nameIDMap, level);
+		return toString(g, nameIDMap.size());
+	}
+
+	/**
+	 * The graph of generateExpandedUndirectedGraph(), as the successors of each node.
+	 */
+	public Map<Integer, Set<Integer>> generateExpandedUndirectedAdjacency(Set<String> entities, 
+			Map<String, Integer> nameIDMap, int level) {
+		
 		if (graph.isDirected())
-			g = expandFromDirectedGraph(entities, nameIDMap, level);
+			return expandFromDirectedGraph(entities, nameIDMap, level);
 		else
-			g = expandFromUndirectedGraph(entities, nameIDMap, level);
-		
-		return toString(g, nameIDMap.size());
+			return expandFromUndirectedGraph(entities, nameIDMap, level);
 	}
 
 	/**
@@ -470,6 +471,19 @@ public class SubGraphGenerator {
 		return toString(g, nameIDMap.size());
 	}
 
+	/**
+	 * The graph of generateExpandedDirectedGraph(), as the successors of each node.
+	 */
+	public Map<Integer, Set<Integer>> generateExpandedDirectedAdjacency(Set<String> entities, 
+			Map<String, Integer> nameIDMap, int level) {
+
+		//we cannot generate directed graph from an undirected graph.
+		if (!graph.isDirected())
+			return null;
+
+		return generateExpandedGraphImpl(entities, nameIDMap, level);
+	}
+
 	private static String toString(Set<Integer> set) {
 		if (set == null || set.isEmpty())
 			return "";
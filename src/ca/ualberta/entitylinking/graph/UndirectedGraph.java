@@ -21,9 +21,7 @@ import it.unimi.dsi.webgraph.labelling.BitStreamArcLabelledImmutableGraph;
 import it.unimi.dsi.webgraph.labelling.Label;
 
 import java.io.BufferedReader;
-import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.ObjectOutputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -91,15 +89,7 @@ public class UndirectedGraph extends WeightedGraph {
 				id2name.put(name2id.get(name), name);
 			
 			//write the mapping into a file.
-			ObjectOutputStream output = new ObjectOutputStream(
-					new FileOutputStream(graphPath + ".map.name2id"));
-			output.writeObject(name2id);
-			output.close();
-			
-			output = new ObjectOutputStream(
-					new FileOutputStream(graphPath + ".map.id2name"));
-			output.writeObject(id2name);
-			output.close();
+			storeNameIDMap();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -113,6 +103,7 @@ public class UndirectedGraph extends WeightedGraph {
 			} else {
 				bitgraph = BitStreamArcLabelledImmutableGraph.load(graphPath);
 			}
+			localGraph = threadLocalCopy(bitgraph);
 
 			if (bitgraph.randomAccess())
 				LOGGER.info("Support random access!");
@@ -135,7 +126,7 @@ public class UndirectedGraph extends WeightedGraph {
 		if (!name2id.containsKey(entName))
 			return 0;
 		
-		return bitgraph.outdegree(name2id.get(entName));
+		return graph().outdegree(name2id.get(entName));
 	}
 
 	@Override
@@ -150,9 +141,9 @@ public class UndirectedGraph extends WeightedGraph {
 			
 		int id = name2id.get(entName);
 		
-		int outDegree = bitgraph.outdegree(id);
+		int outDegree = graph().outdegree(id);
 		int[] ret = new int[outDegree];
-		int[] succ = bitgraph.successorArray(id);
+		int[] succ = graph().successorArray(id);
 		for (int i = 0; i < outDegree; i++)
 			ret[i] = succ[i];
 			
@@ -174,7 +165,7 @@ public class UndirectedGraph extends WeightedGraph {
 		
 		int src = name2id.get(entName);
 
-		ArcLabelledNodeIterator.LabelledArcIterator iter = bitgraph.successors(src);
+		ArcLabelledNodeIterator.LabelledArcIterator iter = graph().successors(src);
 		Map<String, Integer> map = new HashMap<String, Integer>();
 
 		int tgt = -1;
@@ -196,11 +187,17 @@ public class UndirectedGraph extends WeightedGraph {
 	 * GraphName is defined in the configuration file.
 	 * @param argv
 	 * 		argv[0] is the config file: e.g. el.config
-	 * 		argv[1] is the graph file to be saved.
+	 * 		argv[1] is the graph file to be saved, or -names to only write the name
+	 * 		table of a graph stored with the serialized maps.
 	 */
 	public static void main(String[] argv) {
 		WNEDConfig.loadConfiguration(argv[0]);
 		UndirectedGraph graph = new UndirectedGraph(WNEDConfig.cooccurrenceGraphLoc);
-		graph.storeGraph(argv[1]);
+		if (argv[1].equals("-names")) {
+			graph.loadOffline();
+			graph.storeNameIDMap();
+		} else {
+			graph.storeGraph(argv[1]);
+		}
 	}
 }
@@ -15,15 +15,20 @@
  */
 package ca.ualberta.entitylinking.graph;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.ObjectInputStream;
+import java.util.Arrays;
 import java.util.Map;
 
+import ca.ualberta.entitylinking.utils.FrontCodedNameTable;
+
 import es.yrbcn.graph.weighted.WeightedArc;
 import es.yrbcn.graph.weighted.WeightedBVGraph;
 
 import it.unimi.dsi.webgraph.BVGraph;
 import it.unimi.dsi.webgraph.labelling.ArcLabelledImmutableGraph;
+import it.unimi.dsi.webgraph.labelling.ArcLabelledNodeIterator;
 import it.unimi.dsi.webgraph.labelling.BitStreamArcLabelledImmutableGraph;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
@@ -33,6 +38,8 @@ public abstract class WeightedGraph {
 
     protected String graphPath = null;
 	protected ArcLabelledImmutableGraph bitgraph = null;
+	//per-thread copies of bitgraph, the graph itself is not thread-safe.
+	protected ThreadLocal<ArcLabelledImmutableGraph> localGraph = null;
 	protected Map<String, Integer> name2id = null;
 	protected Map<Integer, String> id2name = null;
 
@@ -74,8 +81,42 @@ public abstract class WeightedGraph {
         LOGGER.info("Graph stored!");
 	}
 	
+	/**
+	 * @return The front-coded name table of the graph (see storeNameIDMap()).
+	 */
+	protected String nameTableFile() {
+		return graphPath + ".names";
+	}
+
+	/**
+	 * Write the name to id map of the graph as a front-coded name table, which
+	 * loadNameIDMap() maps instead of deserializing the HashMaps.
+	 */
+	public void storeNameIDMap() {
+		try {
+			FrontCodedNameTable.write(name2id, nameTableFile());
+			LOGGER.info("Stored " + name2id.size() + " names in " + nameTableFile());
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	protected void loadNameIDMap() {
+		if (new File(nameTableFile()).exists()) {
+			try {
+				FrontCodedNameTable names = FrontCodedNameTable.open(nameTableFile());
+				name2id = names.asMap();
+				id2name = names.asInverseMap();
+				LOGGER.info("Mapped " + names.size() + " names from " + nameTableFile());
+				return;
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+
+		//graphs stored before the name tables.
+		LOGGER.warn("No name table " + nameTableFile() + ", loading the serialized maps (write it with -names)");
 		try {
 			ObjectInputStream input = new ObjectInputStream(
 					new FileInputStream(graphPath + ".map.name2id"));
@@ -91,6 +132,30 @@ public abstract class WeightedGraph {
 		}
 	}
 
+	/**
+	 * Bitstream graphs keep the position of their input streams, so concurrent
+	 * readers must each work on a (lightweight) copy of the graph.
+	 *
+	 * @param g
+	 * @return A thread local holding a copy of the graph for each thread.
+	 */
+	protected static ThreadLocal<ArcLabelledImmutableGraph> threadLocalCopy(
+			final ArcLabelledImmutableGraph g) {
+		return new ThreadLocal<ArcLabelledImmutableGraph>() {
+			@Override
+			protected ArcLabelledImmutableGraph initialValue() {
+				return g.copy();
+			}
+		};
+	}
+
+	/**
+	 * @return The copy of the graph owned by the calling thread.
+	 */
+	protected ArcLabelledImmutableGraph graph() {
+		return localGraph.get();
+	}
+
 	public long numArcs() {
 		return bitgraph.numArcs();
 	}
@@ -99,8 +164,52 @@ public abstract class WeightedGraph {
 		return bitgraph.numNodes();
 	}
 	
+	public Map<String, Integer> getNameIDMap() {
+		return name2id;
+	}
+
 	public boolean containsNode(String entName) {
 		return name2id.containsKey(entName);
 	}
+
+	/**
+	 * @param id
+	 * @return The name of the node, null if there is none.
+	 */
+	public String getName(int id) {
+		return id2name.get(id);
+	}
+
+	/**
+	 * The out-arcs of a node, filled in by outArcs(). Reused from node to node.
+	 */
+	public static class Arcs {
+		public int size = 0;
+		public int[] targets = new int[16];
+		public float[] weights = new float[16];
+	}
+
+	/**
+	 * Read the out-arcs of a node by id, with their weights (labels), e.g. for the
+	 * computations over the whole graph. In an undirected graph these are all its arcs.
+	 *
+	 * @param id
+	 * @param arcs Receives the arcs, grown if needed.
+	 */
+	public void outArcs(int id, Arcs arcs) {
+		ArcLabelledNodeIterator.LabelledArcIterator iter = graph().successors(id);
+		arcs.size = 0;
+
+		int tgt = -1;
+		while ((tgt = iter.nextInt()) >= 0) {
+			if (arcs.size == arcs.targets.length) {
+				arcs.targets = Arrays.copyOf(arcs.targets, 2 * arcs.size);
+				arcs.weights = Arrays.copyOf(arcs.weights, 2 * arcs.size);
+			}
+
+			arcs.targets[arcs.size] = tgt;
+			arcs.weights[arcs.size++] = iter.label().getInt();
+		}
+	}
 	
 }
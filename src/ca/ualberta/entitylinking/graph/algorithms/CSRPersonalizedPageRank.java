@@ -0,0 +1,529 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.graph.algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.ualberta.entitylinking.config.WNEDConfig;
+import ca.ualberta.entitylinking.graph.Triple;
+import ca.ualberta.entitylinking.utils.similarity.Kernels;
+
+/**
+ * Weighted personalized PageRank over a graph in compressed sparse row form:
+ * the successors of node i are targets[offsets[i], offsets[i+1]), and the weights
+ * of its arcs are divided by the total out-weight of i when the graph is built.
+ *
+ * It computes the same power method as WeightedPageRankPowerMethod (strongly
+ * preferential: the rank of dangling nodes goes back to the preference), without
+ * compressing the graph into a WeightedBVGraph and without the labelled arc
+ * iterators. The graph is read-only once built, so copies share it.
+ *
+ * With singlePrecision, the entity signatures are iterated with float vectors,
+ * which halves the memory read by each iteration. The steps are summed in double,
+ * and the document signatures are still computed in double.
+ */
+public class CSRPersonalizedPageRank extends PersonalizedPageRank {
+	//the graph.
+	int numNodes = 0;
+	int[] offsets = null;
+	int[] targets = null;
+	float[] weights = null;
+
+	//the state of a computation.
+	double[] preference = null;
+	double[] start = null;
+	double[] rank = null;
+	double[] previousRank = null;
+	int iterations = 0;
+
+	/**
+	 * A ranker sharing the graph and the settings of another one, without the
+	 * vectors of a computation (see init()).
+	 *
+	 * @param other
+	 */
+	protected CSRPersonalizedPageRank(CSRPersonalizedPageRank other) {
+		numNodes = other.numNodes;
+		offsets = other.offsets;
+		targets = other.targets;
+		weights = other.weights;
+		other.copySettings(this);
+	}
+
+	/**
+	 * @param graph The arcs of the graph, arcs with weight 0 are left out.
+	 * @param numNodes The number of nodes, at least the largest node id in the arcs + 1.
+	 */
+	public CSRPersonalizedPageRank(List<Triple> graph, int numNodes) {
+		int n = numNodes;
+		int numArcs = 0;
+		if (graph != null) {
+			for (Triple edge : graph) {
+				if (edge.w == 0.0)
+					continue;
+
+				n = Math.max(n, Math.max(edge.s, edge.t) + 1);
+				numArcs++;
+			}
+		}
+
+		this.numNodes = n;
+		offsets = new int[n + 1];
+		targets = new int[numArcs];
+		weights = new float[numArcs];
+
+		if (graph != null) {
+			//count the out-degrees, then fill in the arcs by source.
+			for (Triple edge : graph) {
+				if (edge.w != 0.0)
+					offsets[edge.s + 1]++;
+			}
+			for (int i = 0; i < n; i++)
+				offsets[i + 1] += offsets[i];
+
+			int[] pos = Arrays.copyOf(offsets, n);
+			for (Triple edge : graph) {
+				if (edge.w == 0.0)
+					continue;
+
+				int k = pos[edge.s]++;
+				targets[k] = edge.t;
+				weights[k] = (float) edge.w;
+			}
+		}
+
+		//precompute the transition probabilities.
+		for (int i = 0; i < n; i++) {
+			float sum = 0;
+			for (int k = offsets[i]; k < offsets[i + 1]; k++)
+				sum += weights[k];
+			for (int k = offsets[i]; k < offsets[i + 1]; k++)
+				weights[k] /= sum;
+		}
+
+		init();
+	}
+
+	public void init() {
+		rank = new double[numNodes];
+		previousRank = new double[numNodes];
+	}
+
+	public PersonalizedPageRank copy() {
+		CSRPersonalizedPageRank copy = new CSRPersonalizedPageRank(this);
+		copy.init();
+
+		return copy;
+	}
+
+	public void setAlpha(double alpha) {
+		this.alpha = alpha;
+	}
+
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+
+	public void setPreference(double[] p) {
+		preference = p;
+	}
+
+	public void setStart(double[] s) {
+		start = s;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * One step of the power method, from rank into newRank. Only the first
+	 * numNodes elements of the vectors are used.
+	 */
+	private void step(double[] pref, double[] rank, double[] newRank) {
+		Arrays.fill(newRank, 0, numNodes, 0.0);
+
+		double accum = 0.0;
+		for (int i = 0; i < numNodes; i++) {
+			int begin = offsets[i], end = offsets[i + 1];
+			if (begin == end) {
+				accum += rank[i];
+				continue;
+			}
+
+			double r = rank[i];
+			for (int k = begin; k < end; k++)
+				newRank[targets[k]] += r * weights[k];
+		}
+
+		if (pref != null)
+			Kernels.get().scaleAdd(newRank, alpha, pref, (1 - alpha) + alpha * accum, numNodes);
+		else
+			Kernels.get().scaleShift(newRank, alpha, ((1 - alpha) + alpha * accum) / numNodes, numNodes);
+	}
+
+	private double normDelta(double[] v1, double[] v2) {
+		return Kernels.get().distanceL1(v1, v2, numNodes);
+	}
+
+	/**
+	 * Run the power method on the given vectors.
+	 *
+	 * @param pref The preference vector, null for the uniform one.
+	 * @param rank The start vector.
+	 * @param other A vector for the next steps.
+	 * @return The one of rank and other holding the result.
+	 */
+	double[] iterate(double[] pref, double[] rank, double[] other) {
+		ConvergenceMonitor monitor = new ConvergenceMonitor(this, targets.length);
+		do {
+			step(pref, rank, other);
+			double[] t = rank;
+			rank = other;
+			other = t;
+		} while (!monitor.shouldStop(rank, numNodes, normDelta(rank, other)));
+
+		iterations = monitor.iterations;
+		monitor.report();
+
+		return rank;
+	}
+
+	public double[] computeRank() {
+		if (preference != null && preference.length != numNodes)
+			throw new IllegalArgumentException("The preference vector size (" + preference.length
+					+ ") is different from graph dimension (" + numNodes + ").");
+
+		if (start != null && start.length == numNodes)
+			System.arraycopy(start, 0, rank, 0, numNodes);
+		else if (preference != null)
+			System.arraycopy(preference, 0, rank, 0, numNodes);
+		else
+			Arrays.fill(rank, 1.0 / numNodes);
+
+		double[] result = iterate(preference, rank, previousRank);
+		if (result != rank) {
+			previousRank = rank;
+			rank = result;
+		}
+
+		return rank;
+	}
+
+	/**
+	 * One step of the power method for a block of sources at once: rank and newRank
+	 * are numNodes x b matrices stored by node (the b values of node i are
+	 * [i*b, (i+1)*b)), so each arc is read once for the whole block, and the
+	 * preference of column j is the unit vector of sources[j].
+	 *
+	 * @param accum The rank of the dangling nodes of each column.
+	 */
+	private void stepBlock(int[] sources, double[] rank, double[] newRank, double[] accum) {
+		int b = sources.length;
+		Arrays.fill(newRank, 0, numNodes * b, 0.0);
+		Arrays.fill(accum, 0, b, 0.0);
+
+		for (int i = 0; i < numNodes; i++) {
+			int begin = offsets[i], end = offsets[i + 1];
+			int row = i * b;
+			if (begin == end) {
+				for (int j = 0; j < b; j++)
+					accum[j] += rank[row + j];
+				continue;
+			}
+
+			for (int k = begin; k < end; k++) {
+				int target = targets[k] * b;
+				double w = weights[k];
+				for (int j = 0; j < b; j++)
+					newRank[target + j] += w * rank[row + j];
+			}
+		}
+
+		Kernels.get().scaleShift(newRank, alpha, 0.0, numNodes * b);
+		for (int j = 0; j < b; j++)
+			newRank[sources[j] * b + j] += (1 - alpha) + alpha * accum[j];
+	}
+
+	/**
+	 * @return The largest L1 distance between the columns of the two matrices.
+	 */
+	private double maxNormDelta(double[] v1, double[] v2, int b, double[] delta) {
+		Arrays.fill(delta, 0, b, 0.0);
+		for (int i = 0; i < numNodes * b; i += b) {
+			for (int j = 0; j < b; j++)
+				delta[j] += Math.abs(v1[i + j] - v2[i + j]);
+		}
+
+		double max = 0.0;
+		for (int j = 0; j < b; j++)
+			max = Math.max(max, delta[j]);
+
+		return max;
+	}
+
+	/**
+	 * Run the power method for a block of sources, until every column has converged.
+	 * The residual is the one of the slowest column, and the stability of the top
+	 * ranks is not checked: the columns have no ranking in common.
+	 *
+	 * @return The one of rank and other holding the result.
+	 */
+	private double[] iterateBlock(int[] sources, double[] rank, double[] other, double[] accum) {
+		int b = sources.length;
+		Arrays.fill(rank, 0, numNodes * b, 0.0);
+		for (int j = 0; j < b; j++)
+			rank[sources[j] * b + j] = 1.0;
+
+		ConvergenceMonitor monitor = new ConvergenceMonitor(this, (long) targets.length * b);
+		do {
+			stepBlock(sources, rank, other, accum);
+			double[] t = rank;
+			rank = other;
+			other = t;
+		} while (!monitor.shouldStop((double[]) null, 0, maxNormDelta(rank, other, b, accum)));
+
+		iterations = monitor.iterations;
+		monitor.report();
+
+		return rank;
+	}
+
+	/**
+	 * step() in single precision, with the unit preference vector of source.
+	 */
+	private void stepFloat(int source, float[] rank, float[] newRank) {
+		Arrays.fill(newRank, 0, numNodes, 0.0f);
+
+		double accum = 0.0;
+		for (int i = 0; i < numNodes; i++) {
+			int begin = offsets[i], end = offsets[i + 1];
+			if (begin == end) {
+				accum += rank[i];
+				continue;
+			}
+
+			float r = rank[i];
+			for (int k = begin; k < end; k++)
+				newRank[targets[k]] += r * weights[k];
+		}
+
+		float a = (float) alpha;
+		for (int i = 0; i < numNodes; i++)
+			newRank[i] *= a;
+		newRank[source] += (float) ((1 - alpha) + alpha * accum);
+	}
+
+	private double normDelta(float[] v1, float[] v2) {
+		double sum = 0.0;
+		for (int i = 0; i < numNodes; i++)
+			sum += Math.abs(v1[i] - v2[i]);
+
+		return sum;
+	}
+
+	/**
+	 * iterate() in single precision, from the unit vector of source.
+	 *
+	 * @return The one of rank and other holding the result.
+	 */
+	private float[] iterateFloat(int source, float[] rank, float[] other) {
+		Arrays.fill(rank, 0, numNodes, 0.0f);
+		rank[source] = 1.0f;
+
+		ConvergenceMonitor monitor = new ConvergenceMonitor(this, targets.length);
+		do {
+			stepFloat(source, rank, other);
+			float[] t = rank;
+			rank = other;
+			other = t;
+		} while (!monitor.shouldStop(rank, numNodes, normDelta(rank, other)));
+
+		iterations = monitor.iterations;
+		monitor.report();
+
+		return rank;
+	}
+
+	/**
+	 * stepBlock() in single precision.
+	 */
+	private void stepBlockFloat(int[] sources, float[] rank, float[] newRank, double[] accum) {
+		int b = sources.length;
+		Arrays.fill(newRank, 0, numNodes * b, 0.0f);
+		Arrays.fill(accum, 0, b, 0.0);
+
+		for (int i = 0; i < numNodes; i++) {
+			int begin = offsets[i], end = offsets[i + 1];
+			int row = i * b;
+			if (begin == end) {
+				for (int j = 0; j < b; j++)
+					accum[j] += rank[row + j];
+				continue;
+			}
+
+			for (int k = begin; k < end; k++) {
+				int target = targets[k] * b;
+				float w = weights[k];
+				for (int j = 0; j < b; j++)
+					newRank[target + j] += w * rank[row + j];
+			}
+		}
+
+		float a = (float) alpha;
+		for (int i = 0; i < numNodes * b; i++)
+			newRank[i] *= a;
+		for (int j = 0; j < b; j++)
+			newRank[sources[j] * b + j] += (float) ((1 - alpha) + alpha * accum[j]);
+	}
+
+	private double maxNormDelta(float[] v1, float[] v2, int b, double[] delta) {
+		Arrays.fill(delta, 0, b, 0.0);
+		for (int i = 0; i < numNodes * b; i += b) {
+			for (int j = 0; j < b; j++)
+				delta[j] += Math.abs(v1[i + j] - v2[i + j]);
+		}
+
+		double max = 0.0;
+		for (int j = 0; j < b; j++)
+			max = Math.max(max, delta[j]);
+
+		return max;
+	}
+
+	/**
+	 * iterateBlock() in single precision.
+	 *
+	 * @return The one of rank and other holding the result.
+	 */
+	private float[] iterateBlockFloat(int[] sources, float[] rank, float[] other, double[] accum) {
+		int b = sources.length;
+		Arrays.fill(rank, 0, numNodes * b, 0.0f);
+		for (int j = 0; j < b; j++)
+			rank[sources[j] * b + j] = 1.0f;
+
+		ConvergenceMonitor monitor = new ConvergenceMonitor(this, (long) targets.length * b);
+		do {
+			stepBlockFloat(sources, rank, other, accum);
+			float[] t = rank;
+			rank = other;
+			other = t;
+		} while (!monitor.shouldStop((float[]) null, 0, maxNormDelta(rank, other, b, accum)));
+
+		iterations = monitor.iterations;
+		monitor.report();
+
+		return rank;
+	}
+
+	public Map<Integer, SemanticSignature> computePageRankParallel(Set<Integer> entities) {
+		if (WNEDConfig.pprBlockSize > 1)
+			return computePageRankBlocks(entities, WNEDConfig.pprBlockSize);
+
+		return PageRankWorkers.computeAll(entities, new PageRankWorkers.TaskFactory() {
+			public PageRankWorkers.Task create() {
+				//the graph is shared, the vectors are the scratch of the worker.
+				final CSRPersonalizedPageRank ranker = new CSRPersonalizedPageRank(CSRPersonalizedPageRank.this);
+
+				return new PageRankWorkers.Task() {
+					public SemanticSignature rank(int eid) {
+						if (eid >= numNodes)
+							return null;
+
+						if (WNEDConfig.singlePrecision) {
+							float[] rank = ranker.iterateFloat(eid, PageRankWorkers.floatScratch(0, numNodes),
+									PageRankWorkers.floatScratch(1, numNodes));
+							double[] column = PageRankWorkers.scratch(0, numNodes);
+							for (int i = 0; i < numNodes; i++)
+								column[i] = rank[i];
+							return SemanticSignature.create(column, numNodes);
+						}
+
+						double[] pref = PageRankWorkers.scratch(0, numNodes);
+						double[] rank = PageRankWorkers.scratch(1, numNodes);
+						double[] other = PageRankWorkers.scratch(2, numNodes);
+						Arrays.fill(pref, 0, numNodes, 0.0);
+						pref[eid] = 1.0;
+						System.arraycopy(pref, 0, rank, 0, numNodes);
+
+						return SemanticSignature.create(ranker.iterate(pref, rank, other), numNodes);
+					}
+				};
+			}
+		}, this);
+	}
+
+	/**
+	 * Compute the signatures of the entities by blocks of sources, see stepBlock().
+	 * The graph is streamed once per iteration of a block instead of once per
+	 * iteration of each entity.
+	 *
+	 * @param entities
+	 * @param blockSize The largest number of sources iterated together, clamped so
+	 * 		that the numNodes x blockSize matrices can be indexed by int.
+	 * @return The signatures by entity id.
+	 */
+	public Map<Integer, SemanticSignature> computePageRankBlocks(Set<Integer> entities, int blockSize) {
+		//the largest arrays the VM allocates have a few elements less than Integer.MAX_VALUE.
+		int maxBlockSize = (int) Math.max(1, (Integer.MAX_VALUE - 8L) / Math.max(1, numNodes));
+		blockSize = Math.min(blockSize, maxBlockSize);
+
+		List<Integer> sources = new ArrayList<Integer>();
+		for (Integer eid : entities) {
+			if (eid < numNodes)
+				sources.add(eid);
+		}
+
+		return PageRankWorkers.computeBlocks(sources, blockSize, new PageRankWorkers.BlockTaskFactory() {
+			public PageRankWorkers.BlockTask create() {
+				final CSRPersonalizedPageRank ranker = new CSRPersonalizedPageRank(CSRPersonalizedPageRank.this);
+
+				return new PageRankWorkers.BlockTask() {
+					public void rank(int[] eids, Map<Integer, SemanticSignature> ranks) {
+						int b = eids.length;
+						double[] column = PageRankWorkers.scratch(0, numNodes);
+						if (WNEDConfig.singlePrecision) {
+							float[] result = ranker.iterateBlockFloat(eids, PageRankWorkers.floatScratch(1, numNodes * b),
+									PageRankWorkers.floatScratch(2, numNodes * b), new double[b]);
+							for (int j = 0; j < b; j++) {
+								for (int i = 0; i < numNodes; i++)
+									column[i] = result[i * b + j];
+								ranks.put(eids[j], SemanticSignature.create(column, numNodes));
+							}
+							return;
+						}
+
+						double[] rank = PageRankWorkers.scratch(1, numNodes * b);
+						double[] other = PageRankWorkers.scratch(2, numNodes * b);
+						double[] accum = new double[b];
+
+						double[] result = ranker.iterateBlock(eids, rank, other, accum);
+						for (int j = 0; j < b; j++) {
+							for (int i = 0; i < numNodes; i++)
+								column[i] = result[i * b + j];
+							ranks.put(eids[j], SemanticSignature.create(column, numNodes));
+						}
+					}
+				};
+			}
+		}, this);
+	}
+
+}
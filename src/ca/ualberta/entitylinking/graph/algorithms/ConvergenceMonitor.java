@@ -0,0 +1,220 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.graph.algorithms;
+
+import java.util.Arrays;
+
+import ca.ualberta.entitylinking.config.WNEDConfig;
+import ca.ualberta.entitylinking.utils.Metrics;
+
+/**
+ * Decides when a run of the power method stops, and reports the run to the
+ * metrics: its iterations, the L1 norm of its last step (the residual), its
+ * time, and why it stopped (converged, stable, capped or expired).
+ *
+ * A run stops once the residual is below the threshold, or after the iteration
+ * cap. With adaptiveIterations, the cap is picked from the size of the graph:
+ * as many iterations as adaptiveArcBudget arcs allow, between maxIter and
+ * adaptiveIterations. The run also stops as soon as the order of the adaptiveTopK
+ * largest ranks of the watched nodes (the candidates, see setWatched()) is the
+ * same in two consecutive iterations, since further iterations are unlikely to
+ * change which candidate wins.
+ *
+ * A monitor is used for a single run, by a single thread.
+ */
+class ConvergenceMonitor {
+	/**
+	 * The names of the metrics of a ranker, built once so reporting does not allocate.
+	 */
+	static class Names {
+		static final Names DEFAULT = new Names("ppr");
+
+		final String run, iterations, residual, converged, stable, capped, expired;
+
+		Names(String prefix) {
+			run = prefix + "Run";
+			iterations = prefix + "Iterations";
+			residual = prefix + "ResidualPpm";
+			converged = prefix + "Converged";
+			stable = prefix + "Stable";
+			capped = prefix + "Capped";
+			expired = prefix + "Expired";
+		}
+	}
+
+	private final PersonalizedPageRank ranker;
+	private final int cap;
+	private final int topK;
+	private final long begin = System.nanoTime();
+
+	//the top-k watched nodes of the previous and of the current iteration, largest first.
+	private int[] previousTop = null;
+	private int[] currentTop = null;
+	private double[] topRanks = null;
+	private boolean stable = false;
+
+	int iterations = 0;
+	double residual = Double.NaN;
+
+	/**
+	 * @param ranker The settings (threshold, maxIter, watched nodes) and the metrics of the run.
+	 * @param numArcs The number of arcs of the graph, read once per iteration.
+	 */
+	ConvergenceMonitor(PersonalizedPageRank ranker, long numArcs) {
+		this.ranker = ranker;
+		cap = iterationCap(ranker.maxIter, numArcs);
+		topK = WNEDConfig.adaptiveIterations > 0 ? WNEDConfig.adaptiveTopK : 0;
+		if (topK > 0) {
+			previousTop = new int[topK];
+			currentTop = new int[topK];
+			topRanks = new double[topK];
+		}
+	}
+
+	/**
+	 * @return The largest number of iterations of a run over a graph with numArcs arcs.
+	 */
+	static int iterationCap(int maxIter, long numArcs) {
+		if (WNEDConfig.adaptiveIterations <= maxIter)
+			return maxIter;
+
+		long affordable = WNEDConfig.adaptiveArcBudget / Math.max(1, numArcs);
+		return (int) Math.max(maxIter, Math.min(WNEDConfig.adaptiveIterations, affordable));
+	}
+
+	/**
+	 * Called after each iteration.
+	 *
+	 * @param rank The rank after the iteration, null to skip the check of the top ranks.
+	 * @param n The number of nodes (elements of rank) in use.
+	 * @param delta The L1 distance between the rank before and after the iteration.
+	 * @return True if the run should stop.
+	 */
+	boolean shouldStop(double[] rank, int n, double delta) {
+		return shouldStop(rank, null, n, delta);
+	}
+
+	/**
+	 * shouldStop() for a rank in single precision.
+	 */
+	boolean shouldStop(float[] rank, int n, double delta) {
+		return shouldStop(null, rank, n, delta);
+	}
+
+	private boolean shouldStop(double[] rank, float[] floatRank, int n, double delta) {
+		iterations++;
+		residual = delta;
+
+		if (ranker.isExpired() || delta < ranker.threshold || iterations >= cap)
+			return true;
+
+		if (topK > 0 && (rank != null || floatRank != null)) {
+			boolean full = selectTop(rank, floatRank, n);
+			stable = full && iterations > 1 && Arrays.equals(previousTop, currentTop);
+			int[] t = previousTop;
+			previousTop = currentTop;
+			currentTop = t;
+		}
+
+		return stable;
+	}
+
+	/**
+	 * Select the topK largest positive ranks of the watched nodes (of every node
+	 * if none are watched) into currentTop, from rank or floatRank.
+	 *
+	 * @return False if fewer than topK of the watched nodes have been reached yet:
+	 * 		the order of the top ranks may still change as the rank spreads.
+	 */
+	private boolean selectTop(double[] rank, float[] floatRank, int n) {
+		Arrays.fill(currentTop, -1);
+		Arrays.fill(topRanks, 0.0);
+
+		int[] watched = ranker.watched;
+		int count = watched == null ? n : watched.length;
+		int candidates = 0, reached = 0;
+		for (int i = 0; i < count; i++) {
+			int node = watched == null ? i : watched[i];
+			if (node >= n)
+				continue;
+
+			candidates++;
+			double r = rank != null ? rank[node] : floatRank[node];
+			if (r <= 0.0)
+				continue;
+
+			reached++;
+			if (r <= topRanks[topK - 1])
+				continue;
+
+			//insert it into the sorted top-k.
+			int j = topK - 1;
+			while (j > 0 && r > topRanks[j - 1]) {
+				topRanks[j] = topRanks[j - 1];
+				currentTop[j] = currentTop[j - 1];
+				j--;
+			}
+			topRanks[j] = r;
+			currentTop[j] = node;
+		}
+
+		return reached > 0 && (reached >= topK || reached == candidates);
+	}
+
+	/**
+	 * Report the run to the metrics of the ranker (see setMetricsPrefix()).
+	 */
+	void report() {
+		Names names = ranker.metrics;
+		if (names == null)
+			return;
+
+		if (ranker.isExpired())
+			report(names, names.expired);
+		else if (residual < ranker.threshold)
+			report(names, names.converged);
+		else if (stable)
+			report(names, names.stable);
+		else
+			report(names, names.capped);
+	}
+
+	/**
+	 * Report a run of an engine without iterations of the power method, e.g. the
+	 * pushes or the walks of the approximate engines, which converge by
+	 * construction unless they expire.
+	 *
+	 * @param steps The number of steps of the run.
+	 * @param residual The rank mass not accounted for, NaN if unknown.
+	 */
+	void report(int steps, double residual) {
+		Names names = ranker.metrics;
+		if (names == null)
+			return;
+
+		iterations = steps;
+		this.residual = residual;
+		report(names, ranker.isExpired() ? names.expired : names.converged);
+	}
+
+	private void report(Names names, String outcome) {
+		Metrics.time(names.run, begin);
+		Metrics.record(names.iterations, iterations);
+		if (!Double.isNaN(residual))
+			Metrics.record(names.residual, (long) (residual * 1000000));
+		Metrics.increment(outcome);
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.graph.algorithms;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.ualberta.entitylinking.config.WNEDConfig;
+import ca.ualberta.entitylinking.graph.Triple;
+import ca.ualberta.entitylinking.utils.Metrics;
+
+/**
+ * Approximate personalized PageRank by forward push (Andersen, Chung and Lang,
+ * "Local graph partitioning using PageRank vectors", FOCS 2006).
+ *
+ * The preference is the initial residual. A node u with a residual above
+ * epsilon * outdegree(u) (pushEpsilon, at least epsilon for dangling nodes)
+ * keeps 1 - alpha of it as rank, and passes alpha of it to its successors by arc
+ * weight, or back to the preference if it is dangling (strongly preferential, as
+ * the power method). The push stops once every residual is below its threshold,
+ * so it only visits the neighbourhood of the preference, and the rank is short
+ * of the true one by the residual left.
+ *
+ * If no node of the preference is above its threshold, e.g. a uniform preference
+ * over more than 1 / epsilon nodes, nothing could be pushed, and the rank is
+ * computed by the power method instead (counted as pushFallbacks).
+ */
+public class ForwardPushPersonalizedPageRank extends CSRPersonalizedPageRank {
+	double epsilon = 0.0001;
+	int pushes = 0;
+
+	/**
+	 * @param graph The arcs of the graph, arcs with weight 0 are left out.
+	 * @param numNodes The number of nodes, at least the largest node id in the arcs + 1.
+	 */
+	public ForwardPushPersonalizedPageRank(List<Triple> graph, int numNodes) {
+		super(graph, numNodes);
+		epsilon = WNEDConfig.pushEpsilon;
+	}
+
+	protected ForwardPushPersonalizedPageRank(ForwardPushPersonalizedPageRank other) {
+		super(other);
+		epsilon = other.epsilon;
+	}
+
+	public PersonalizedPageRank copy() {
+		ForwardPushPersonalizedPageRank copy = new ForwardPushPersonalizedPageRank(this);
+		copy.init();
+
+		return copy;
+	}
+
+	/**
+	 * @return The number of pushes of the last computation.
+	 */
+	public int getIterations() {
+		return pushes;
+	}
+
+	/**
+	 * The nodes with a residual above epsilon, each queued at most once.
+	 */
+	private static class Worklist {
+		int[] queue = null;
+		boolean[] queued = null;
+		int head = 0;
+		int size = 0;
+
+		Worklist(int n) {
+			queue = new int[n];
+			queued = new boolean[n];
+		}
+
+		void offer(int u) {
+			if (queued[u])
+				return;
+
+			queued[u] = true;
+			queue[(head + size++) % queue.length] = u;
+		}
+
+		int poll() {
+			int u = queue[head];
+			head = (head + 1) % queue.length;
+			size--;
+			queued[u] = false;
+
+			return u;
+		}
+
+		void clear() {
+			while (size > 0)
+				poll();
+			head = 0;
+		}
+	}
+
+	/**
+	 * @return The residual above which node u is pushed.
+	 */
+	private double threshold(int u) {
+		return epsilon * Math.max(1, offsets[u + 1] - offsets[u]);
+	}
+
+	/**
+	 * Push the preference into the rank. Only the first numNodes elements of the
+	 * vectors are used, and they must be 0.
+	 *
+	 * @param prefNodes The nodes of the preference.
+	 * @param prefValues Their preference, summing to 1.
+	 * @param rank
+	 * @param residual
+	 * @return False if no node of the preference is above its threshold: nothing
+	 * 		is pushed, and the rank is left at 0.
+	 */
+	private boolean push(int[] prefNodes, double[] prefValues, double[] rank, double[] residual, Worklist work) {
+		boolean pushable = false;
+		for (int j = 0; j < prefNodes.length; j++) {
+			residual[prefNodes[j]] += prefValues[j];
+			pushable |= residual[prefNodes[j]] > threshold(prefNodes[j]);
+		}
+		if (!pushable) {
+			Arrays.fill(residual, 0, numNodes, 0.0);
+			return false;
+		}
+
+		for (int j = 0; j < prefNodes.length; j++)
+			work.offer(prefNodes[j]);
+
+		ConvergenceMonitor monitor = new ConvergenceMonitor(this, targets.length);
+		//the rank mass pushed so far, the rest is left in the residuals.
+		double settled = 0.0;
+		pushes = 0;
+		while (work.size > 0) {
+			if ((pushes & 1023) == 0 && isExpired())
+				break;
+
+			int u = work.poll();
+			double r = residual[u];
+			if (r <= threshold(u))
+				continue;
+
+			residual[u] = 0.0;
+			rank[u] += (1 - alpha) * r;
+			settled += (1 - alpha) * r;
+			double mass = alpha * r;
+			pushes++;
+
+			int begin = offsets[u], end = offsets[u + 1];
+			if (begin == end) {
+				for (int j = 0; j < prefNodes.length; j++) {
+					int v = prefNodes[j];
+					residual[v] += mass * prefValues[j];
+					if (residual[v] > threshold(v))
+						work.offer(v);
+				}
+				continue;
+			}
+
+			for (int k = begin; k < end; k++) {
+				int v = targets[k];
+				residual[v] += mass * weights[k];
+				if (residual[v] > threshold(v))
+					work.offer(v);
+			}
+		}
+
+		work.clear();
+		monitor.report(pushes, Math.max(0.0, 1.0 - settled));
+
+		return true;
+	}
+
+	public double[] computeRank() {
+		if (preference != null && preference.length != numNodes)
+			throw new IllegalArgumentException("The preference vector size (" + preference.length
+					+ ") is different from graph dimension (" + numNodes + ").");
+
+		int count = 0;
+		for (int i = 0; i < numNodes; i++) {
+			if (preference == null || preference[i] > 0.0)
+				count++;
+		}
+
+		int[] prefNodes = new int[count];
+		double[] prefValues = new double[count];
+		count = 0;
+		for (int i = 0; i < numNodes; i++) {
+			if (preference == null || preference[i] > 0.0) {
+				prefNodes[count] = i;
+				prefValues[count++] = preference == null ? 1.0 / numNodes : preference[i];
+			}
+		}
+
+		Arrays.fill(rank, 0.0);
+		Arrays.fill(previousRank, 0.0);
+		if (!push(prefNodes, prefValues, rank, previousRank, new Worklist(numNodes))) {
+			Metrics.increment("pushFallbacks");
+			return super.computeRank();
+		}
+
+		return rank;
+	}
+
+	public Map<Integer, SemanticSignature> computePageRankParallel(Set<Integer> entities) {
+		return PageRankWorkers.computeAll(entities, new PageRankWorkers.TaskFactory() {
+			public PageRankWorkers.Task create() {
+				final ForwardPushPersonalizedPageRank ranker =
+						new ForwardPushPersonalizedPageRank(ForwardPushPersonalizedPageRank.this);
+				final Worklist work = new Worklist(numNodes);
+				final int[] prefNodes = new int[1];
+				final double[] prefValues = new double[] {1.0};
+
+				return new PageRankWorkers.Task() {
+					public SemanticSignature rank(int eid) {
+						if (eid >= numNodes)
+							return null;
+
+						double[] rank = PageRankWorkers.scratch(0, numNodes);
+						double[] residual = PageRankWorkers.scratch(1, numNodes);
+						Arrays.fill(rank, 0, numNodes, 0.0);
+						Arrays.fill(residual, 0, numNodes, 0.0);
+
+						prefNodes[0] = eid;
+						if (!ranker.push(prefNodes, prefValues, rank, residual, work)) {
+							//a hub with more than 1 / epsilon arcs.
+							Metrics.increment("pushFallbacks");
+							double[] pref = PageRankWorkers.scratch(2, numNodes);
+							Arrays.fill(pref, 0, numNodes, 0.0);
+							pref[eid] = 1.0;
+							System.arraycopy(pref, 0, rank, 0, numNodes);
+							rank = ranker.iterate(pref, rank, residual);
+						}
+
+						return SemanticSignature.create(rank, numNodes);
+					}
+				};
+			}
+		}, this);
+	}
+}
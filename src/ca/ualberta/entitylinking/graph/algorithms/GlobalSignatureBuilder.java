@@ -0,0 +1,303 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.graph.algorithms;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import ca.ualberta.entitylinking.config.WNEDConfig;
+import ca.ualberta.entitylinking.graph.DirectedGraph;
+import ca.ualberta.entitylinking.graph.UndirectedGraph;
+import ca.ualberta.entitylinking.graph.WeightedGraph;
+import ca.ualberta.entitylinking.utils.Pair;
+
+/**
+ * The offline job precomputing the signatures of the most frequent candidates
+ * over the whole knowledge base graph (the linkGraph, or the cooccurGraph if the
+ * graph is undirected), into a GlobalSignatureStore (see globalSignatures).
+ *
+ * The signatures are computed by forward push (as ForwardPushPersonalizedPageRank,
+ * with pushEpsilon), which only visits the neighbourhood of each entity, and the
+ * k largest ranks are kept. Each worker holds two vectors over all the nodes of
+ * the graph, and the signatures are held in memory until they are written.
+ *
+ * java -cp $CP ca.ualberta.entitylinking.graph.algorithms.GlobalSignatureBuilder el.config store N k [frequencies]
+ *
+ * The N entities are the most frequent ones of the frequencies file (a name and
+ * a count per line, tab separated), or the ones with the largest in-degree.
+ */
+public class GlobalSignatureBuilder {
+	private static Logger LOGGER = LogManager.getLogger(GlobalSignatureBuilder.class);
+
+	private WeightedGraph graph = null;
+	private int numNodes = 0;
+	private int k = 0;
+	private double alpha = 0.85;
+	private double epsilon = 0.0001;
+
+	/**
+	 * The vectors of a worker, over all the nodes of the graph. Only the touched
+	 * nodes are cleared between two entities.
+	 */
+	private class Worker {
+		double[] rank = new double[numNodes];
+		double[] residual = new double[numNodes];
+		boolean[] queued = new boolean[numNodes];
+		int[] queue = new int[numNodes];
+		int[] touched = new int[numNodes];
+		int numTouched = 0;
+		WeightedGraph.Arcs arcs = new WeightedGraph.Arcs();
+
+		private void touch(int u) {
+			if (rank[u] == 0.0 && residual[u] == 0.0)
+				touched[numTouched++] = u;
+		}
+
+		/**
+		 * @return The signature of the source, over the node ids of the graph.
+		 */
+		SemanticSignature compute(int source) {
+			int head = 0, size = 0;
+			touch(source);
+			residual[source] = 1.0;
+			queue[size++] = source;
+			queued[source] = true;
+
+			while (size > 0) {
+				int u = queue[head];
+				head = (head + 1) % numNodes;
+				size--;
+				queued[u] = false;
+
+				double r = residual[u];
+				if (r <= epsilon)
+					continue;
+
+				graph.outArcs(u, arcs);
+				double sum = 0.0;
+				for (int j = 0; j < arcs.size; j++)
+					sum += arcs.weights[j];
+
+				residual[u] = 0.0;
+				rank[u] += (1 - alpha) * r;
+				double mass = alpha * r;
+
+				//dangling nodes send their mass back to the source.
+				int count = sum > 0.0 ? arcs.size : 1;
+				for (int j = 0; j < count; j++) {
+					int v = sum > 0.0 ? arcs.targets[j] : source;
+					touch(v);
+					residual[v] += sum > 0.0 ? mass * arcs.weights[j] / sum : mass;
+					if (residual[v] > epsilon && !queued[v]) {
+						queued[v] = true;
+						queue[(head + size++) % numNodes] = v;
+					}
+				}
+			}
+
+			SemanticSignature sig = topK();
+			for (int i = 0; i < numTouched; i++) {
+				rank[touched[i]] = 0.0;
+				residual[touched[i]] = 0.0;
+			}
+			numTouched = 0;
+
+			return sig;
+		}
+
+		/**
+		 * @return The k largest ranks of the touched nodes, sorted by node.
+		 */
+		private SemanticSignature topK() {
+			Integer[] nodes = new Integer[numTouched];
+			for (int i = 0; i < numTouched; i++)
+				nodes[i] = touched[i];
+			Arrays.sort(nodes, new java.util.Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return Double.compare(rank[b], rank[a]);
+				}
+			});
+
+			int size = 0;
+			while (size < Math.min(k, nodes.length) && rank[nodes[size]] > 0.0)
+				size++;
+
+			int[] indices = new int[size];
+			for (int j = 0; j < size; j++)
+				indices[j] = nodes[j];
+			Arrays.sort(indices);
+
+			double[] values = new double[size];
+			double kept = 0.0;
+			for (int j = 0; j < size; j++) {
+				values[j] = rank[indices[j]];
+				kept += values[j];
+			}
+
+			//the residuals not pushed are lost as well.
+			return SemanticSignature.sparse(numNodes, indices, values, Math.max(0.0, 1.0 - kept));
+		}
+	}
+
+	public GlobalSignatureBuilder(WeightedGraph graph, int k) {
+		this.graph = graph;
+		this.numNodes = graph.numNodes();
+		this.k = k;
+		this.epsilon = WNEDConfig.pushEpsilon;
+	}
+
+	/**
+	 * Compute the signatures of the given nodes on pprThreads workers.
+	 *
+	 * @param sources
+	 * @return The signatures by node.
+	 * @throws IllegalStateException If a worker failed, so no partial store is written.
+	 */
+	public Map<Integer, SemanticSignature> compute(final List<Integer> sources) {
+		final Map<Integer, SemanticSignature> signatures = new HashMap<Integer, SemanticSignature>();
+		final AtomicInteger next = new AtomicInteger(0);
+		int numThreads = WNEDConfig.pprThreads > 0 ? WNEDConfig.pprThreads
+				: Runtime.getRuntime().availableProcessors();
+
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		List<Future<?>> workers = new ArrayList<Future<?>>();
+		for (int t = 0; t < numThreads; t++) {
+			workers.add(pool.submit(new Runnable() {
+				public void run() {
+					Worker worker = new Worker();
+					int i = 0;
+					while ((i = next.getAndIncrement()) < sources.size()) {
+						SemanticSignature sig = worker.compute(sources.get(i));
+						synchronized (signatures) {
+							signatures.put(sources.get(i), sig);
+						}
+						if ((i + 1) % 1000 == 0)
+							LOGGER.info("Computed " + (i + 1) + " signatures");
+					}
+				}
+			}));
+		}
+
+		pool.shutdown();
+		try {
+			for (Future<?> worker : workers)
+				worker.get();
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while computing the signatures", e);
+		} catch (ExecutionException e) {
+			pool.shutdownNow();
+			throw new IllegalStateException("A worker failed to compute the signatures", e.getCause());
+		}
+
+		return signatures;
+	}
+
+	/**
+	 * @param n
+	 * @param frequencyFile A name and a count per line, or null to rank the
+	 * 		entities by in-degree.
+	 * @return The node ids of the n most frequent entities of the graph.
+	 */
+	public static List<Integer> mostFrequent(WeightedGraph graph, int n, String frequencyFile) {
+		//a min-heap of the n most frequent entities seen so far.
+		PriorityQueue<Pair<Integer, Long>> heap = new PriorityQueue<Pair<Integer, Long>>(n + 1,
+				new java.util.Comparator<Pair<Integer, Long>>() {
+					public int compare(Pair<Integer, Long> a, Pair<Integer, Long> b) {
+						return a.getValue2().compareTo(b.getValue2());
+					}
+				});
+
+		Map<String, Integer> name2id = graph.getNameIDMap();
+		try {
+			if (frequencyFile != null) {
+				BufferedReader r = new BufferedReader(new FileReader(frequencyFile));
+				String line = null;
+				while ((line = r.readLine()) != null) {
+					String[] toks = line.split("\t");
+					Integer id = toks.length < 2 ? null : name2id.get(toks[0]);
+					if (id != null)
+						offer(heap, n, id, Long.parseLong(toks[1].trim()));
+				}
+				r.close();
+			} else {
+				for (Map.Entry<String, Integer> e : name2id.entrySet())
+					offer(heap, n, e.getValue(), graph.inDegree(e.getKey()));
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+
+		List<Integer> nodes = new ArrayList<Integer>();
+		for (Pair<Integer, Long> p : heap)
+			nodes.add(p.getValue1());
+
+		return nodes;
+	}
+
+	private static void offer(PriorityQueue<Pair<Integer, Long>> heap, int n, int id, long count) {
+		heap.add(new Pair<Integer, Long>(id, count));
+		if (heap.size() > n)
+			heap.poll();
+	}
+
+	/**
+	 * @param args
+	 * 		args[0] is the config file: e.g. el.config
+	 * 		args[1] is the store to write.
+	 * 		args[2] is the number of entities.
+	 * 		args[3] is the number of ranks kept in each signature.
+	 * 		args[4] (optional) is the frequencies of the entities.
+	 */
+	public static void main(String[] args) {
+		WNEDConfig.loadConfiguration(args[0]);
+
+		WeightedGraph graph = null;
+		if (WNEDConfig.directedGraph)
+			graph = new DirectedGraph(WNEDConfig.linkGraphLoc);
+		else
+			graph = new UndirectedGraph(WNEDConfig.cooccurrenceGraphLoc);
+		graph.load();
+
+		List<Integer> sources = mostFrequent(graph, Integer.parseInt(args[2]), args.length > 4 ? args[4] : null);
+		LOGGER.info("Computing the signatures of " + sources.size() + " entities");
+
+		GlobalSignatureBuilder builder = new GlobalSignatureBuilder(graph, Integer.parseInt(args[3]));
+		Map<Integer, SemanticSignature> signatures = builder.compute(sources);
+
+		try {
+			GlobalSignatureStore.write(signatures, args[1]);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		LOGGER.info("Stored " + signatures.size() + " signatures in " + args[1]);
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.graph.algorithms;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The precomputed signatures of popular entities over the whole knowledge base
+ * graph (see GlobalSignatureBuilder), in a memory-mapped file keyed by graph
+ * node id. Opening a store only maps the file, and the pages are shared by all
+ * the processes on the machine.
+ *
+ * The file layout (big endian) is
+ * <pre>
+ *     int magic, int version, int n, int numEntries
+ *     int[n]          nodes       the node of each signature, sorted
+ *     int[n + 1]      offsets     the entries of the i-th signature are [offsets[i], offsets[i+1])
+ *     float[n]        residuals   the rank mass left out of each signature
+ *     int[numEntries] indices     the nodes of the entries, sorted within a signature
+ *     float[numEntries] values
+ * </pre>
+ * Stores are limited to 2GB.
+ */
+public class GlobalSignatureStore {
+	private static final int MAGIC = 0x574e4753;	//"WNGS"
+	private static final int VERSION = 1;
+	private static final int HEADER = 16;
+
+	private MappedByteBuffer buf = null;
+	private int n = 0;
+	private int numEntries = 0;
+	private int nodesPos = 0;
+	private int offsetsPos = 0;
+	private int residualsPos = 0;
+	private int indicesPos = 0;
+	private int valuesPos = 0;
+
+	private GlobalSignatureStore(MappedByteBuffer buf) throws IOException {
+		this.buf = buf;
+		if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION)
+			throw new IOException("Not a signature store");
+
+		n = buf.getInt(8);
+		numEntries = buf.getInt(12);
+		nodesPos = HEADER;
+		offsetsPos = nodesPos + 4 * n;
+		residualsPos = offsetsPos + 4 * (n + 1);
+		indicesPos = residualsPos + 4 * n;
+		valuesPos = indicesPos + 4 * numEntries;
+	}
+
+	/**
+	 * Map a store written by write().
+	 *
+	 * @param file
+	 * @return The store.
+	 * @throws IOException
+	 */
+	public static GlobalSignatureStore open(String file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException(file + " is larger than 2GB");
+
+			//the mapping stays valid after the channel is closed.
+			return new GlobalSignatureStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Write signatures as a store.
+	 *
+	 * @param signatures The signatures by node; their indices must be sorted.
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void write(Map<Integer, SemanticSignature> signatures, String file) throws IOException {
+		int[] nodes = new int[signatures.size()];
+		int size = 0;
+		long entries = 0;
+		for (Map.Entry<Integer, SemanticSignature> e : signatures.entrySet()) {
+			nodes[size++] = e.getKey();
+			entries += e.getValue().entries();
+		}
+		Arrays.sort(nodes);
+
+		if (HEADER + 4L * (3 * size + 1) + 8L * entries > Integer.MAX_VALUE)
+			throw new IOException(file + " would be larger than 2GB");
+
+		File tmp = new File(file + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(size);
+			out.writeInt((int) entries);
+
+			for (int i = 0; i < size; i++)
+				out.writeInt(nodes[i]);
+
+			int offset = 0;
+			out.writeInt(0);
+			for (int i = 0; i < size; i++) {
+				offset += signatures.get(nodes[i]).entries();
+				out.writeInt(offset);
+			}
+
+			for (int i = 0; i < size; i++)
+				out.writeFloat((float) signatures.get(nodes[i]).getResidual());
+			for (int i = 0; i < size; i++) {
+				SemanticSignature sig = signatures.get(nodes[i]);
+				for (int j = 0; j < sig.entries(); j++)
+					out.writeInt(sig.index(j));
+			}
+			for (int i = 0; i < size; i++) {
+				SemanticSignature sig = signatures.get(nodes[i]);
+				for (int j = 0; j < sig.entries(); j++)
+					out.writeFloat((float) sig.value(j));
+			}
+		} finally {
+			out.close();
+		}
+
+		//only replace an existing store with a complete one.
+		File target = new File(file);
+		if (target.exists() && !target.delete())
+			throw new IOException("Cannot replace " + file);
+		if (!tmp.renameTo(target))
+			throw new IOException("Cannot rename " + tmp + " to " + file);
+	}
+
+	/**
+	 * @return The number of signatures.
+	 */
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * @param node A node of the knowledge base graph.
+	 * @return The position of its signature, -1 if it has none.
+	 */
+	public int find(int node) {
+		int low = 0, high = n - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int c = buf.getInt(nodesPos + 4 * mid);
+			if (c < node)
+				low = mid + 1;
+			else if (c > node)
+				high = mid - 1;
+			else
+				return mid;
+		}
+
+		return -1;
+	}
+
+	private int offset(int i) {
+		return buf.getInt(offsetsPos + 4 * i);
+	}
+
+	/**
+	 * @param i The position of a signature.
+	 * @return The rank mass left out of the signature.
+	 */
+	public double getResidual(int i) {
+		return buf.getFloat(residualsPos + 4 * i);
+	}
+
+	/**
+	 * Add the i-th signature, restricted to the nodes of a document graph, to v.
+	 *
+	 * @param i The position of the signature.
+	 * @param local The document graph node of each knowledge base node.
+	 * @param v A vector over the nodes of the document graph.
+	 * @return The rank mass added, i.e. on the nodes of the document graph.
+	 */
+	public double project(int i, Map<Integer, Integer> local, double[] v) {
+		double mass = 0.0;
+		for (int k = offset(i), end = offset(i + 1); k < end; k++) {
+			Integer id = local.get(buf.getInt(indicesPos + 4 * k));
+			if (id == null || id >= v.length)
+				continue;
+
+			float value = buf.getFloat(valuesPos + 4 * k);
+			v[id] += value;
+			mass += value;
+		}
+
+		return mass;
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.graph.algorithms;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import ca.ualberta.entitylinking.config.WNEDConfig;
+import ca.ualberta.entitylinking.graph.Triple;
+
+/**
+ * Approximate personalized PageRank by random walks: a walk starts from a node
+ * drawn from the preference, follows an arc (by weight) with probability alpha
+ * at each step, and jumps back to the preference at dangling nodes. The rank of
+ * a node is the fraction of the walks (monteCarloWalks) ending there.
+ *
+ * The cost only depends on the number of walks (about walks / (1 - alpha) steps),
+ * not on the size of the graph. The walks of an entity are seeded by its id, so
+ * the signatures do not depend on the worker computing them.
+ */
+public class MonteCarloPersonalizedPageRank extends CSRPersonalizedPageRank {
+	int numWalks = 1000;
+	int walks = 0;
+	//the running sum of the arc weights of each node, to draw the next arc.
+	float[] cumWeights = null;
+
+	/**
+	 * @param graph The arcs of the graph, arcs with weight 0 are left out.
+	 * @param numNodes The number of nodes, at least the largest node id in the arcs + 1.
+	 */
+	public MonteCarloPersonalizedPageRank(List<Triple> graph, int numNodes) {
+		super(graph, numNodes);
+		numWalks = WNEDConfig.monteCarloWalks;
+
+		cumWeights = new float[weights.length];
+		for (int i = 0; i < this.numNodes; i++) {
+			float sum = 0;
+			for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+				sum += weights[k];
+				cumWeights[k] = sum;
+			}
+		}
+	}
+
+	protected MonteCarloPersonalizedPageRank(MonteCarloPersonalizedPageRank other) {
+		super(other);
+		numWalks = other.numWalks;
+		cumWeights = other.cumWeights;
+	}
+
+	public PersonalizedPageRank copy() {
+		MonteCarloPersonalizedPageRank copy = new MonteCarloPersonalizedPageRank(this);
+		copy.init();
+
+		return copy;
+	}
+
+	/**
+	 * @return The number of walks of the last computation.
+	 */
+	public int getIterations() {
+		return walks;
+	}
+
+	/**
+	 * @return The index of the first element of cum[begin, end) above x.
+	 */
+	private static int draw(float[] cum, int begin, int end, float x) {
+		int lo = begin, hi = end - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (cum[mid] > x)
+				hi = mid;
+			else
+				lo = mid + 1;
+		}
+
+		return lo;
+	}
+
+	/**
+	 * Run the walks, and count their ends into rank. Only the first numNodes
+	 * elements of rank are used, and they must be 0.
+	 *
+	 * @param prefNodes The nodes of the preference.
+	 * @param prefCum The running sum of their preference, ending at 1.
+	 * @param rank
+	 * @param random
+	 */
+	private void walk(int[] prefNodes, float[] prefCum, double[] rank, Random random) {
+		ConvergenceMonitor monitor = new ConvergenceMonitor(this, targets.length);
+		walks = 0;
+		for (int w = 0; w < numWalks; w++) {
+			if ((w & 255) == 0 && isExpired())
+				break;
+
+			int u = prefNodes[draw(prefCum, 0, prefNodes.length, random.nextFloat())];
+			while (random.nextDouble() < alpha) {
+				int begin = offsets[u], end = offsets[u + 1];
+				if (begin == end)
+					u = prefNodes[draw(prefCum, 0, prefNodes.length, random.nextFloat())];
+				else
+					u = targets[draw(cumWeights, begin, end, random.nextFloat())];
+			}
+
+			rank[u] += 1.0;
+			walks++;
+		}
+
+		if (walks > 0) {
+			for (int i = 0; i < numNodes; i++)
+				rank[i] /= walks;
+		}
+		monitor.report(walks, Double.NaN);
+	}
+
+	public double[] computeRank() {
+		if (preference != null && preference.length != numNodes)
+			throw new IllegalArgumentException("The preference vector size (" + preference.length
+					+ ") is different from graph dimension (" + numNodes + ").");
+
+		int count = 0;
+		for (int i = 0; i < numNodes; i++) {
+			if (preference == null || preference[i] > 0.0)
+				count++;
+		}
+
+		int[] prefNodes = new int[count];
+		float[] prefCum = new float[count];
+		float sum = 0;
+		count = 0;
+		for (int i = 0; i < numNodes; i++) {
+			if (preference == null || preference[i] > 0.0) {
+				sum += preference == null ? 1.0 / numNodes : preference[i];
+				prefNodes[count] = i;
+				prefCum[count++] = sum;
+			}
+		}
+
+		Arrays.fill(rank, 0.0);
+		walk(prefNodes, prefCum, rank, new Random(0));
+
+		return rank;
+	}
+
+	public Map<Integer, SemanticSignature> computePageRankParallel(Set<Integer> entities) {
+		return PageRankWorkers.computeAll(entities, new PageRankWorkers.TaskFactory() {
+			public PageRankWorkers.Task create() {
+				final MonteCarloPersonalizedPageRank ranker =
+						new MonteCarloPersonalizedPageRank(MonteCarloPersonalizedPageRank.this);
+				final int[] prefNodes = new int[1];
+				final float[] prefCum = new float[] {1.0f};
+
+				return new PageRankWorkers.Task() {
+					public SemanticSignature rank(int eid) {
+						if (eid >= numNodes)
+							return null;
+
+						double[] rank = PageRankWorkers.scratch(0, numNodes);
+						Arrays.fill(rank, 0, numNodes, 0.0);
+
+						prefNodes[0] = eid;
+						ranker.walk(prefNodes, prefCum, rank, new Random(eid));
+
+						return SemanticSignature.create(rank, numNodes);
+					}
+				};
+			}
+		}, this);
+	}
+}
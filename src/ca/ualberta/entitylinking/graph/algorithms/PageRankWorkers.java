@@ -0,0 +1,250 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.graph.algorithms;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.ualberta.entitylinking.config.WNEDConfig;
+
+/**
+ * The long-lived workers computing the semantic signatures of entities, shared
+ * by all the documents linked concurrently (pprThreads, one per core by default).
+ *
+ * A document submits one task per worker (at most), and each task computes the
+ * signatures of the entities it takes from the document until there are none
+ * left. The workers keep their scratch vectors between tasks, grown to the
+ * largest graph seen.
+ */
+public class PageRankWorkers {
+	private static ExecutorService pool = null;
+	private static int numThreads = 0;
+
+	private static final int SCRATCH_SLOTS = 3;
+	private static ThreadLocal<double[][]> scratch = new ThreadLocal<double[][]>() {
+		@Override
+		protected double[][] initialValue() {
+			return new double[SCRATCH_SLOTS][0];
+		}
+	};
+	private static ThreadLocal<float[][]> floatScratch = new ThreadLocal<float[][]>() {
+		@Override
+		protected float[][] initialValue() {
+			return new float[SCRATCH_SLOTS][0];
+		}
+	};
+
+	/**
+	 * Computes the signatures of the entities taken from a document, with the
+	 * state of one worker.
+	 */
+	public interface Task {
+		/**
+		 * @param eid
+		 * @return The signature of the entity (see SemanticSignature.create()), or null
+		 * 		if it could not be computed.
+		 */
+		SemanticSignature rank(int eid);
+	}
+
+	/**
+	 * Creates the state of a worker for one document, e.g. a ranker over its graph.
+	 */
+	public interface TaskFactory {
+		Task create();
+	}
+
+	/**
+	 * Computes the signatures of blocks of entities taken from a document, with
+	 * the state of one worker.
+	 */
+	public interface BlockTask {
+		/**
+		 * @param eids
+		 * @param ranks The signatures computed are added to it.
+		 */
+		void rank(int[] eids, Map<Integer, SemanticSignature> ranks);
+	}
+
+	public interface BlockTaskFactory {
+		BlockTask create();
+	}
+
+	private static synchronized ExecutorService getPool() {
+		if (pool == null) {
+			numThreads = WNEDConfig.pprThreads > 0 ?
+					WNEDConfig.pprThreads : Runtime.getRuntime().availableProcessors();
+			pool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+				AtomicInteger count = new AtomicInteger(0);
+
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "wned-pagerank-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+
+		return pool;
+	}
+
+	/**
+	 * @param slot The index of the vector, less than 3.
+	 * @param n
+	 * @return A vector of the calling thread with at least n elements, not cleared.
+	 */
+	public static double[] scratch(int slot, int n) {
+		double[][] vectors = scratch.get();
+		if (vectors[slot].length < n)
+			vectors[slot] = new double[n];
+
+		return vectors[slot];
+	}
+
+	/**
+	 * scratch() in single precision, see singlePrecision.
+	 */
+	public static float[] floatScratch(int slot, int n) {
+		float[][] vectors = floatScratch.get();
+		if (vectors[slot].length < n)
+			vectors[slot] = new float[n];
+
+		return vectors[slot];
+	}
+
+	/**
+	 * Compute the signatures of the entities on the workers.
+	 *
+	 * @param entities The entity ids.
+	 * @param factory Creates the state of each worker.
+	 * @param ranker The ranker of the document, the remaining entities are skipped
+	 * 		once its deadline has passed.
+	 * @return The signatures by entity id.
+	 */
+	public static Map<Integer, SemanticSignature> computeAll(Iterable<Integer> entities,
+			final TaskFactory factory, final PersonalizedPageRank ranker) {
+		final List<Integer> eids = new ArrayList<Integer>();
+		for (Integer eid : entities)
+			eids.add(eid);
+
+		ExecutorService pool = getPool();
+		final AtomicInteger next = new AtomicInteger(0);
+		List<Future<Map<Integer, SemanticSignature>>> futures = new ArrayList<Future<Map<Integer, SemanticSignature>>>();
+		int numTasks = Math.min(eids.size(), numThreads);
+		for (int t = 0; t < numTasks; t++) {
+			futures.add(pool.submit(new Callable<Map<Integer, SemanticSignature>>() {
+				public Map<Integer, SemanticSignature> call() {
+					Map<Integer, SemanticSignature> ranks = new HashMap<Integer, SemanticSignature>();
+					Task task = factory.create();
+					int i = 0;
+					while ((i = next.getAndIncrement()) < eids.size()) {
+						//skip the remaining entities without computing them.
+						if (ranker.isExpired())
+							break;
+
+						int eid = eids.get(i);
+						SemanticSignature rank = task.rank(eid);
+						if (rank != null)
+							ranks.put(eid, rank);
+					}
+
+					return ranks;
+				}
+			}));
+		}
+
+		Map<Integer, SemanticSignature> ranks = new HashMap<Integer, SemanticSignature>();
+		for (Future<Map<Integer, SemanticSignature>> future : futures) {
+			try {
+				ranks.putAll(future.get());
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+
+		return ranks;
+	}
+
+	/**
+	 * Compute the signatures of the entities on the workers, by blocks of at most
+	 * blockSize entities. The blocks are made smaller if there are not enough of
+	 * them to keep all the workers busy.
+	 *
+	 * @param entities The entity ids.
+	 * @param blockSize
+	 * @param factory Creates the state of each worker.
+	 * @param ranker The ranker of the document, the remaining blocks are skipped
+	 * 		once its deadline has passed.
+	 * @return The signatures by entity id.
+	 */
+	public static Map<Integer, SemanticSignature> computeBlocks(Iterable<Integer> entities, int blockSize,
+			final BlockTaskFactory factory, final PersonalizedPageRank ranker) {
+		List<Integer> eids = new ArrayList<Integer>();
+		for (Integer eid : entities)
+			eids.add(eid);
+
+		ExecutorService pool = getPool();
+		blockSize = Math.max(1, Math.min(blockSize, (eids.size() + numThreads - 1) / numThreads));
+		final List<int[]> blocks = new ArrayList<int[]>();
+		for (int begin = 0; begin < eids.size(); begin += blockSize) {
+			int[] block = new int[Math.min(blockSize, eids.size() - begin)];
+			for (int j = 0; j < block.length; j++)
+				block[j] = eids.get(begin + j);
+			blocks.add(block);
+		}
+
+		final AtomicInteger next = new AtomicInteger(0);
+		List<Future<Map<Integer, SemanticSignature>>> futures = new ArrayList<Future<Map<Integer, SemanticSignature>>>();
+		int numTasks = Math.min(blocks.size(), numThreads);
+		for (int t = 0; t < numTasks; t++) {
+			futures.add(pool.submit(new Callable<Map<Integer, SemanticSignature>>() {
+				public Map<Integer, SemanticSignature> call() {
+					Map<Integer, SemanticSignature> ranks = new HashMap<Integer, SemanticSignature>();
+					BlockTask task = factory.create();
+					int i = 0;
+					while ((i = next.getAndIncrement()) < blocks.size()) {
+						if (ranker.isExpired())
+							break;
+
+						task.rank(blocks.get(i), ranks);
+					}
+
+					return ranks;
+				}
+			}));
+		}
+
+		Map<Integer, SemanticSignature> ranks = new HashMap<Integer, SemanticSignature>();
+		for (Future<Map<Integer, SemanticSignature>> future : futures) {
+			try {
+				ranks.putAll(future.get());
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+
+		return ranks;
+	}
+
+}
@@ -19,24 +19,132 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import ca.ualberta.entitylinking.config.WNEDConfig;
+import ca.ualberta.entitylinking.graph.Triple;
 import es.yrbcn.graph.weighted.WeightedPageRank;
 import it.unimi.dsi.webgraph.ImmutableGraph;
 
 public abstract class PersonalizedPageRank {
 	protected ImmutableGraph g = null;
-	protected double threshold = 0.00001;	//stopping threshold
-	protected int maxIter = 3; 			//maximum iterations.
+	protected double threshold = WNEDConfig.pprThreshold;	//stopping threshold
+	protected int maxIter = WNEDConfig.pprMaxIter; 			//maximum iterations.
 	protected double alpha = 0.85;
 	protected boolean stronglyPreferential = true;
+	//stop computing once System.nanoTime() passes it, the results are then incomplete.
+	protected volatile long deadline = Long.MAX_VALUE;
+	//the nodes whose top ranks stop the adaptive iterations once stable, null for all (see ConvergenceMonitor).
+	protected int[] watched = null;
+	//the metrics the runs are reported to, null for none.
+	protected ConvergenceMonitor.Names metrics = ConvergenceMonitor.Names.DEFAULT;
 	
 	public abstract void init();
 	public abstract void setAlpha(double alpha);
 	public abstract void setPreference(double[] p);
 	public abstract double[] computeRank();
-	public abstract Map<Integer, List<Double>> computePageRankParallel(Set<Integer> entities);
+	public abstract Map<Integer, SemanticSignature> computePageRankParallel(Set<Integer> entities);
 	
+	/**
+	 * @return A ranker over the same graph with the same settings, but its own
+	 * 		state, so the two can compute ranks concurrently.
+	 */
+	public abstract PersonalizedPageRank copy();
+	
+	/**
+	 * Set the vector computeRank() starts iterating from, e.g. a previous result
+	 * for a similar preference vector. It must be stochastic, or null for the
+	 * default start. Rankers that cannot start from a given vector ignore it.
+	 * 
+	 * @param s
+	 */
 	public void setStart(double[] s) {}
 	
+	/**
+	 * @return The number of iterations of the last computeRank().
+	 */
+	public int getIterations() {
+		return 0;
+	}
+	
+	/**
+	 * Set the nodes whose ranking matters, e.g. the candidate entities: with
+	 * adaptiveIterations, the power method stops once the order of their largest
+	 * ranks no longer changes.
+	 * 
+	 * @param nodes The node ids, null for every node.
+	 */
+	public void setWatched(int[] nodes) {
+		watched = nodes;
+	}
+	
+	/**
+	 * Set the prefix of the metrics each run is reported to (&lt;prefix&gt;Iterations,
+	 * &lt;prefix&gt;ResidualPpm, &lt;prefix&gt;Run, ...), "ppr" by default.
+	 * 
+	 * @param prefix The prefix, null to report nothing.
+	 */
+	public void setMetricsPrefix(String prefix) {
+		metrics = prefix == null ? null : new ConvergenceMonitor.Names(prefix);
+	}
+	
+	/**
+	 * Copy the settings shared by every engine into a copy of this ranker.
+	 */
+	protected void copySettings(PersonalizedPageRank copy) {
+		copy.threshold = threshold;
+		copy.maxIter = maxIter;
+		copy.alpha = alpha;
+		copy.deadline = deadline;
+		copy.watched = watched;
+		copy.metrics = metrics;
+	}
+	
+	/**
+	 * Set the deadline of the computation, as a System.nanoTime() value.
+	 * 
+	 * @param deadline
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+	
+	/**
+	 * @return True if the deadline has passed, and the last results are not to be trusted.
+	 */
+	public boolean isExpired() {
+		return System.nanoTime() > deadline;
+	}
+	
+	/**
+	 * Create the weighted ranker of a document graph with the engine selected by
+	 * pprEngine.
+	 * 
+	 * @param edges The arcs of the graph.
+	 * @param numNodes The number of nodes of the graph.
+	 * @return The ranker.
+	 */
+	public static PersonalizedPageRank createWeighted(List<Triple> edges, int numNodes) {
+		return createWeighted(WNEDConfig.pprEngine, edges, numNodes);
+	}
+	
+	/**
+	 * @param engine "webgraph" (WeightedPageRankPowerMethod over a WeightedBVGraph),
+	 * 		"csr" (CSRPersonalizedPageRank), or the approximate "push"
+	 * 		(ForwardPushPersonalizedPageRank) and "montecarlo" (MonteCarloPersonalizedPageRank).
+	 * @param edges The arcs of the graph.
+	 * @param numNodes The number of nodes of the graph.
+	 * @return The ranker.
+	 */
+	public static PersonalizedPageRank createWeighted(String engine, List<Triple> edges, int numNodes) {
+		if (engine.equals("csr"))
+			return new CSRPersonalizedPageRank(edges, numNodes);
+		if (engine.equals("push"))
+			return new ForwardPushPersonalizedPageRank(edges, numNodes);
+		if (engine.equals("montecarlo"))
+			return new MonteCarloPersonalizedPageRank(edges, numNodes);
+		
+		return new WeightedPersonalizedPageRank(edges);
+	}
+	
 	public static boolean isStochastic(double[] v ) {
 		double normL1 = 0.0, c = 0.0, t, y;
 
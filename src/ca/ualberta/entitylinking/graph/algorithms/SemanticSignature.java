@@ -0,0 +1,290 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.graph.algorithms;
+
+import java.util.Arrays;
+
+import ca.ualberta.entitylinking.config.WNEDConfig;
+
+/**
+ * The semantic signature of an entity: its personalized pagerank over the nodes
+ * of the document graph.
+ *
+ * With signatureTopK = 0 the signature is dense (values[i] is the rank of node i).
+ * Otherwise only the k largest ranks are kept as sorted (index, value) pairs, and
+ * the rank mass of the other nodes is kept as the residual. Most of the mass of an
+ * entity signature sits on a few hundred nodes around the entity, so this takes
+ * O(k) instead of O(nodes) memory per entity.
+ *
+ * With singlePrecision the values are stored as floats, which halves the memory
+ * of the signatures (and the bandwidth of the similarities reading them).
+ */
+public class SemanticSignature {
+	//the number of nodes.
+	private int size = 0;
+	//the nodes of the values, null if the signature is dense.
+	private int[] indices = null;
+	//the values, in double or (with singlePrecision) in single precision.
+	private double[] values = null;
+	private float[] floatValues = null;
+	//the rank mass of the nodes left out.
+	private double residual = 0.0;
+
+	private SemanticSignature() {
+	}
+
+	/**
+	 * @param rank
+	 * @param n The number of nodes, the rest of the vector is ignored.
+	 * @return The signature of the first n elements of the rank vector, sparse if
+	 * 		signatureTopK is set, in single precision if singlePrecision is set.
+	 * 		The vector is copied.
+	 */
+	public static SemanticSignature create(double[] rank, int n) {
+		SemanticSignature sig = null;
+		if (WNEDConfig.signatureTopK > 0 && WNEDConfig.signatureTopK < n)
+			sig = topK(rank, n, WNEDConfig.signatureTopK);
+		else if (WNEDConfig.singlePrecision)
+			sig = denseSinglePrecision(rank, n);
+		else
+			return dense(Arrays.copyOf(rank, n));
+
+		return WNEDConfig.singlePrecision ? sig.toSinglePrecision() : sig;
+	}
+
+	/**
+	 * @return A dense signature of the first n elements of rank, in single precision.
+	 */
+	private static SemanticSignature denseSinglePrecision(double[] rank, int n) {
+		SemanticSignature sig = new SemanticSignature();
+		sig.size = n;
+		sig.floatValues = new float[n];
+		for (int i = 0; i < n; i++)
+			sig.floatValues[i] = (float) rank[i];
+
+		return sig;
+	}
+
+	/**
+	 * @return This signature with its values in single precision.
+	 */
+	private SemanticSignature toSinglePrecision() {
+		if (values == null)
+			return this;
+
+		floatValues = new float[values.length];
+		for (int j = 0; j < values.length; j++)
+			floatValues[j] = (float) values[j];
+		values = null;
+
+		return this;
+	}
+
+	/**
+	 * @param rank The vector, kept by the signature.
+	 * @return A dense signature.
+	 */
+	public static SemanticSignature dense(double[] rank) {
+		SemanticSignature sig = new SemanticSignature();
+		sig.size = rank.length;
+		sig.values = rank;
+
+		return sig;
+	}
+
+	/**
+	 * @param n The number of nodes.
+	 * @param indices The nodes of the values, sorted; kept by the signature.
+	 * @param values Kept by the signature.
+	 * @param residual The rank mass of the other nodes.
+	 * @return A sparse signature.
+	 */
+	public static SemanticSignature sparse(int n, int[] indices, double[] values, double residual) {
+		SemanticSignature sig = new SemanticSignature();
+		sig.size = n;
+		sig.indices = indices;
+		sig.values = values;
+		sig.residual = residual;
+
+		return sig;
+	}
+
+	/**
+	 * @param rank
+	 * @param n The number of nodes.
+	 * @param k
+	 * @return A sparse signature with the (at most) k largest non-zero ranks.
+	 */
+	public static SemanticSignature topK(double[] rank, int n, int k) {
+		//a min-heap of the k largest ranks seen so far.
+		int[] heap = new int[k];
+		int heapSize = 0;
+		double total = 0.0;
+		for (int i = 0; i < n; i++) {
+			double r = rank[i];
+			total += r;
+			if (r <= 0.0)
+				continue;
+
+			if (heapSize < k) {
+				heap[heapSize] = i;
+				siftUp(rank, heap, heapSize++);
+			} else if (r > rank[heap[0]]) {
+				heap[0] = i;
+				siftDown(rank, heap, heapSize);
+			}
+		}
+
+		SemanticSignature sig = new SemanticSignature();
+		sig.size = n;
+		sig.indices = Arrays.copyOf(heap, heapSize);
+		Arrays.sort(sig.indices);
+		sig.values = new double[heapSize];
+
+		double kept = 0.0;
+		for (int j = 0; j < heapSize; j++) {
+			sig.values[j] = rank[sig.indices[j]];
+			kept += sig.values[j];
+		}
+		sig.residual = Math.max(0.0, total - kept);
+
+		return sig;
+	}
+
+	private static void siftUp(double[] rank, int[] heap, int i) {
+		int node = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			if (rank[heap[parent]] <= rank[node])
+				break;
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = node;
+	}
+
+	private static void siftDown(double[] rank, int[] heap, int heapSize) {
+		int node = heap[0];
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize)
+				break;
+			if (child + 1 < heapSize && rank[heap[child + 1]] < rank[heap[child]])
+				child++;
+			if (rank[node] <= rank[heap[child]])
+				break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = node;
+	}
+
+	/**
+	 * @return The number of nodes.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isSparse() {
+		return indices != null;
+	}
+
+	/**
+	 * @return True if the values are stored in single precision, see getFloatValues().
+	 */
+	public boolean isSinglePrecision() {
+		return floatValues != null;
+	}
+
+	/**
+	 * @return The number of values kept.
+	 */
+	public int entries() {
+		return values != null ? values.length : floatValues.length;
+	}
+
+	/**
+	 * @return The memory taken by the values and their nodes, in bytes.
+	 */
+	public long bytes() {
+		long bytes = values != null ? 8L * values.length : 4L * floatValues.length;
+		return indices == null ? bytes : bytes + 4L * indices.length;
+	}
+
+	/**
+	 * @return The node of the j-th value (j itself if the signature is dense).
+	 */
+	public int index(int j) {
+		return indices == null ? j : indices[j];
+	}
+
+	public double value(int j) {
+		return values != null ? values[j] : floatValues[j];
+	}
+
+	/**
+	 * @return The values, i.e. the rank vector if the signature is dense, null if
+	 * 		they are stored in single precision. Not to be modified.
+	 */
+	public double[] getValues() {
+		return values;
+	}
+
+	/**
+	 * @return The values in single precision, null if they are stored in double. Not to be modified.
+	 */
+	public float[] getFloatValues() {
+		return floatValues;
+	}
+
+	/**
+	 * @return The rank mass of the nodes left out, 0 if the signature is dense.
+	 */
+	public double getResidual() {
+		return residual;
+	}
+
+	/**
+	 * @return The signature as a dense vector, 0 for the nodes left out.
+	 */
+	public double[] toArray() {
+		double[] v = new double[size];
+		addTo(v, 1.0);
+
+		return v;
+	}
+
+	/**
+	 * Add the weighted signature to a dense vector; the residual is left out.
+	 *
+	 * @param v A vector of size() elements.
+	 * @param weight
+	 */
+	public void addTo(double[] v, double weight) {
+		if (floatValues != null) {
+			for (int j = 0; j < floatValues.length; j++)
+				v[index(j)] += weight * floatValues[j];
+		} else if (indices == null) {
+			for (int i = 0; i < values.length; i++)
+				v[i] += weight * values[i];
+		} else {
+			for (int j = 0; j < indices.length; j++)
+				v[indices[j]] += weight * values[j];
+		}
+	}
+}
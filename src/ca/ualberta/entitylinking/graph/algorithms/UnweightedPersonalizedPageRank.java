@@ -20,14 +20,10 @@ import it.unimi.dsi.law.rank.PageRank;
 import it.unimi.dsi.law.rank.PageRankParallelGaussSeidel;
 import it.unimi.dsi.law.rank.SpectralRanking;
 import it.unimi.dsi.law.rank.SpectralRanking.StoppingCriterion;
-import it.unimi.dsi.law.rank.SpectralRanking.NormStoppingCriterion;
-import it.unimi.dsi.law.rank.SpectralRanking.IterationNumberStoppingCriterion;
-import it.unimi.dsi.webgraph.BVGraph;
+import it.unimi.dsi.webgraph.ImmutableGraph;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -39,11 +35,23 @@ public class UnweightedPersonalizedPageRank extends PersonalizedPageRank {
     PageRank ranker = null;
 	double[] pref = null;
 
-	public UnweightedPersonalizedPageRank(BVGraph graph) {
+	public UnweightedPersonalizedPageRank(ImmutableGraph graph) {
 		ranker = new PageRankParallelGaussSeidel(graph, 20, LOGGER);
 		pref = new double[graph.numNodes()];
 	}
 	
+	public PersonalizedPageRank copy() {
+		//the graph may not be thread-safe, the copy shares its data but not its readers.
+		UnweightedPersonalizedPageRank copy =
+				new UnweightedPersonalizedPageRank(ranker.graph.copy());
+		copySettings(copy);
+		//the same settings as this ranker, which may not have been init()ed.
+		copy.ranker.alpha = ranker.alpha;
+		copy.ranker.stronglyPreferential = ranker.stronglyPreferential;
+		
+		return copy;
+	}
+	
 	public void init() {
 		ranker.alpha = alpha;
 		ranker.stronglyPreferential = true;
@@ -58,22 +66,33 @@ public class UnweightedPersonalizedPageRank extends PersonalizedPageRank {
 	}
 	
 	public double[] computeRank() {
+		final ConvergenceMonitor monitor = new ConvergenceMonitor(this, ranker.graph.numArcs());
 		try {
 			ranker.init();
-			ranker.stepUntil(or(new NormStoppingCriterion(threshold),
-								new IterationNumberStoppingCriterion(maxIter)));
+			ranker.stepUntil(new StoppingCriterion() {
+				public boolean shouldStop(SpectralRanking p) {
+					return monitor.shouldStop(p.rank, p.n, p.normDelta());
+				}
+			});
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
+		monitor.report();
 		
 		return ranker.rank;
 	}
 	
-	public Map<Integer, List<Double>> computePageRankParallel(Set<Integer> entities) {
-		Map<Integer, List<Double>> results = new HashMap<Integer, List<Double>>();
-		List<Double> list = null;
+	public int getIterations() {
+		return ranker.iteration;
+	}
+	
+	public Map<Integer, SemanticSignature> computePageRankParallel(Set<Integer> entities) {
+		Map<Integer, SemanticSignature> results = new HashMap<Integer, SemanticSignature>();
 		
 		for (Integer eid : entities) {
+			if (isExpired())
+				break;
+
 			Arrays.fill(pref, 0.0);
 			pref[eid] = 1.0;
 			setPreference(pref);
@@ -81,22 +100,10 @@ public class UnweightedPersonalizedPageRank extends PersonalizedPageRank {
 			double[] rank = computeRank();
 			if (rank == null)	continue;
 			
-			list = new ArrayList<Double>();
-			for (int i = 0; i < rank.length; i++)
-				list.add(rank[i]);
-			
-			results.put(eid, list);
+			results.put(eid, SemanticSignature.create(rank, rank.length));
 		}
 		
 		return results;	
 	}
-	
-	private static StoppingCriterion or( final StoppingCriterion stop1, final StoppingCriterion stop2 ) {
-		return new StoppingCriterion() {
-			public boolean shouldStop( final SpectralRanking p ) {
-				return stop1.shouldStop( p ) || stop2.shouldStop( p );
-			}
-		};
-	}
 
 }
@@ -21,11 +21,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import ca.ualberta.entitylinking.graph.Triple;
-import ca.ualberta.entitylinking.kb.wikipedia.wikixmlj.Pair;
 
 import es.yrbcn.graph.weighted.WeightedArc;
 import es.yrbcn.graph.weighted.WeightedBVGraph;
@@ -38,74 +35,52 @@ import it.unimi.dsi.webgraph.labelling.ArcLabelledImmutableGraph;
 public class WeightedPersonalizedPageRank extends PersonalizedPageRank{
 	ArcLabelledImmutableGraph g = null;
 	WeightedPageRankPowerMethod ranker = null;
+	long numArcs = 0;
 
-	//Each input is a task consisting of a taskID, and the task.
-	BlockingQueue<Pair<Integer, Map<Integer, Double>>> inputQueue = 
-			new LinkedBlockingQueue<Pair<Integer, Map<Integer, Double>>>();
-	BlockingQueue<Pair<Integer, List<Double>>> outputQueue = 
-			new LinkedBlockingQueue<Pair<Integer, List<Double>>>();
+	/**
+	 * @return The criterion stopping a run of the power method, see ConvergenceMonitor.
+	 */
+	private WeightedPageRank.StoppingCriterion stoppingCriterion(final ConvergenceMonitor monitor) {
+		return new WeightedPageRank.StoppingCriterion() {
+			public boolean shouldStop(WeightedPageRank p) {
+				return monitor.shouldStop(p.rank, p.rank.length, p.normDelta());
+			}
+		};
+	}
 	
-	public class PageRankThread extends Thread {
+	/**
+	 * Computes the signatures of entities on a worker of PageRankWorkers, with
+	 * its own power method over the shared graph.
+	 */
+	private class PageRankTask implements PageRankWorkers.Task {
 		WeightedPageRankPowerMethod rankerT = null;
-		double[] s = null;
 		
-		public PageRankThread(ArcLabelledImmutableGraph g) {
+		public PageRankTask() {
 			rankerT = new WeightedPageRankPowerMethod(g);
 			rankerT.alpha = alpha;
 			rankerT.stronglyPreferential = true;
-			
-			s = new double[g.numNodes()];
 		}
 		
-		private double[] computeRankT() {
+		public SemanticSignature rank(int eid) {
+			int n = g.numNodes();
+			if (eid >= n)
+				return null;
+			
+			double[] s = PageRankWorkers.scratch(0, n);
+			Arrays.fill(s, 0, n, 0.0);
+			s[eid] = 1.0;
+			rankerT.preference = DoubleArrayList.wrap(s, n);
+			
+			ConvergenceMonitor monitor = new ConvergenceMonitor(WeightedPersonalizedPageRank.this, numArcs);
 			try {
-				rankerT.stepUntil( WeightedPageRank.or(
-					new WeightedPageRank.NormDeltaStoppingCriterion(threshold),
-					new WeightedPageRank.IterationNumberStoppingCriterion(maxIter)));
+				rankerT.stepUntil(stoppingCriterion(monitor));
 			} catch (Exception e) {
 				e.printStackTrace();
+				return null;
 			}
+			monitor.report();
 			
-			return rankerT.rank;
-		}
-
-		public void run() {
-			//get preference vector from user.
-			Pair<Integer, Map<Integer, Double>> pair = null;
-			Map<Integer, Double> prefVector = null;
-			while (true) {
-				try {
-					pair = inputQueue.take();
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-
-				prefVector = pair.getValue2();
-				if (prefVector == null)
-					break;
-				
-				Arrays.fill(s,  0.0);
-				for (Integer eid : prefVector.keySet())
-					s[eid.intValue()] = prefVector.get(eid);
-
-				rankerT.preference = new DoubleArrayList(s);
-				double[] rank = computeRankT();
-
-				List<Double> rankList = new ArrayList<Double>();
-				if (rank != null) {
-					for (int i = 0; i < rank.length; i++)
-						rankList.add(rank[i]);
-				}
-
-				Pair<Integer, List<Double>> ret = new Pair<Integer, List<Double>>(
-						pair.getValue1(), rankList);
-
-				try {
-					outputQueue.put(ret);
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-			}
+			return SemanticSignature.create(rankerT.rank, n);
 		}
 	}
 	
@@ -135,6 +110,20 @@ public class WeightedPersonalizedPageRank extends PersonalizedPageRank{
 		init();
 	}
 
+	public PersonalizedPageRank copy() {
+		WeightedPersonalizedPageRank copy = new WeightedPersonalizedPageRank();
+		copy.g = g;
+		copy.numArcs = numArcs;
+		copySettings(copy);
+		if (g != null) {
+			copy.ranker = new WeightedPageRankPowerMethod(g);
+			copy.init();
+			copy.ranker.alpha = ranker.alpha;
+		}
+		
+		return copy;
+	}
+	
 	public void setAlpha(double alpha) {
 		ranker.alpha = alpha;
 	}
@@ -167,6 +156,7 @@ public class WeightedPersonalizedPageRank extends PersonalizedPageRank{
 			}
 		}
 		
+		numArcs = list.size();
 		WeightedArc[] arcList = list.toArray(new WeightedArc[1]);
 		final ArcLabelledImmutableGraph graph = new WeightedBVGraph(arcList);
 		
@@ -189,6 +179,7 @@ public class WeightedPersonalizedPageRank extends PersonalizedPageRank{
 
 		if (list.isEmpty())
 			return null;
+		numArcs = list.size();
 		WeightedArc[] arcList = list.toArray(new WeightedArc[1]);
 		final ArcLabelledImmutableGraph graph = new WeightedBVGraph(arcList);
 		
@@ -200,68 +191,38 @@ public class WeightedPersonalizedPageRank extends PersonalizedPageRank{
 	}
 	
 	/**
-	 * Set the start vector.
+	 * Set the start vector, null for the uniform one.
 	 * 
 	 * @param s
 	 */
 	public void setStart(double[] s) {
-		ranker.start = new DoubleArrayList(s);
+		ranker.start = s == null ? null : new DoubleArrayList(s);
+	}
+	
+	public int getIterations() {
+		return ranker.iterationNumber;
 	}
 	
 	public double[] computeRank() {
+		ConvergenceMonitor monitor = new ConvergenceMonitor(this, numArcs);
 		try {
-			ranker.stepUntil( WeightedPageRank.or(
-				new WeightedPageRank.NormDeltaStoppingCriterion(threshold),
-				new WeightedPageRank.IterationNumberStoppingCriterion(maxIter)));
+			ranker.stepUntil(stoppingCriterion(monitor));
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
+		monitor.report();
 		
 		return ranker.rank;
 	}
 
-	public void addTask(int taskNum, int eid, double weight) {
-		Map<Integer, Double> task = new HashMap<Integer, Double>();
-		task.put(eid, weight);
-		addTask(taskNum, task);
-	}
-	
-	public void addTask(int taskNum, Map<Integer, Double> task) {
-		inputQueue.add(new Pair<Integer, Map<Integer, Double>>(taskNum, task));
-	}
-	
-	public Map<Integer, List<Double>> computePageRankParallel(Set<Integer> entities) {
-        //we simply use the id of entity as the taskNum.
-		for (Integer eid : entities)
-			addTask(eid, eid, 1.0);
-		
-		int threadNum = 32;
-		for (int i = 0; i < threadNum; i++)
-			addTask(0, null);
-		
-		Thread[] threads = new Thread[threadNum];
-		for (int i = 0; i < threadNum; i++) {
-			threads[i] = new PageRankThread(g);
-			threads[i].start();
-		}
+	public Map<Integer, SemanticSignature> computePageRankParallel(Set<Integer> entities) {
+		if (g == null)
+			return new HashMap<Integer, SemanticSignature>();
 		
-		try {
-			for (int i = 0; i < threadNum; i++)
-				threads[i].join();
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-		
-		Map<Integer, List<Double>> ranks = new HashMap<Integer, List<Double>>();
-		Pair<Integer, List<Double>> ret = null;
-		while (!outputQueue.isEmpty()) {
-			try {
-				ret = outputQueue.take();
-			} catch (Exception e) { e.printStackTrace(); }
-			
-			ranks.put(ret.getValue1(), ret.getValue2());
-		}
-		
-		return ranks;
+		return PageRankWorkers.computeAll(entities, new PageRankWorkers.TaskFactory() {
+			public PageRankWorkers.Task create() {
+				return new PageRankTask();
+			}
+		}, this);
 	}
 }
\ No newline at end of file
@@ -56,6 +56,7 @@ import ca.ualberta.entitylinking.graph.DirectedGraph;
 import ca.ualberta.entitylinking.graph.UndirectedGraph;
 import ca.ualberta.entitylinking.graph.SubGraphGenerator;
 import ca.ualberta.entitylinking.graph.algorithms.PersonalizedPageRank;
+import ca.ualberta.entitylinking.graph.algorithms.SemanticSignature;
 import ca.ualberta.entitylinking.graph.algorithms.UnweightedPersonalizedPageRank;
 import ca.ualberta.entitylinking.graph.algorithms.WeightedPersonalizedPageRank;
 import ca.ualberta.entitylinking.common.data.Document;
@@ -245,7 +246,7 @@ public class SemanticSignatureEL {
      */
     private void cleanupCandidates(Map<Entity, Double> candidates, Set<String> entities,
                                    Map<String, Integer> e2id,
-                                   Map<Integer, List<Double>> ranks) {
+                                   Map<Integer, SemanticSignature> ranks) {
 
         if (candidates == null || candidates.size() <= 1)
             return;
@@ -393,7 +394,7 @@ public class SemanticSignatureEL {
 
         //3. Compute the semantic signature, and perform the disambiguation.
         //3.1. Compute the semantic signature of all entities.
-        Map<Integer, List<Double>> entSemSigs =
+        Map<Integer, SemanticSignature> entSemSigs =
                 ELUtils.computePageRankParallel(entities, e2id, ranker);
 
         //clear the candidates by removing entities not in the graph.
@@ -417,7 +418,7 @@ public class SemanticSignatureEL {
             }
         }
 
-        List<Double> docSemSig = null;
+        double[] docSemSig = null;
         List<String> ret = new ArrayList<String>();
 
         //Update the semantic signature of the document.
@@ -514,7 +515,7 @@ public class SemanticSignatureEL {
         //3. Compute the semantic signature, and perform the disambiguation.
         //3.1. Compute the semantic signature of all entities.
 		begin = System.currentTimeMillis();
-		Map<Integer, List<Double>> entSemSigs =
+		Map<Integer, SemanticSignature> entSemSigs =
                 ELUtils.computePageRankParallel(entities, e2id, ranker);
 		end = System.currentTimeMillis();
 		LOGGER.info("computePageRankParallel[" + entities.size() + "]: " + (end - begin) + "ms");
@@ -551,7 +552,7 @@ public class SemanticSignatureEL {
             }
         }
 
-        List<Double> docSemSig = null;
+        double[] docSemSig = null;
         Map<String, Double> tempEntities = null;
 
         //Start disambiguation.
@@ -650,8 +651,8 @@ public class SemanticSignatureEL {
 	}
 
     private Entity disambiguateMention(Mention m, Map<Entity, Double> candidates,
-                                       List<Double> docSemSig,
-                                       Map<Integer, List<Double>> entSemSigs,
+                                       double[] docSemSig,
+                                       Map<Integer, SemanticSignature> entSemSigs,
                                        Map<String, Integer> e2id,
                                        WeightCache weightCache) {
         if (candidates == null || candidates.isEmpty())
@@ -17,6 +17,7 @@ package ca.ualberta.entitylinking.utils;
 
 import ca.ualberta.entitylinking.common.data.*;
 import ca.ualberta.entitylinking.common.nlp.OrthoMatcherCoref;
+import ca.ualberta.entitylinking.common.nlp.SimpleTokenizer;
 import ca.ualberta.entitylinking.common.nlp.StanfordNER;
 import ca.ualberta.entitylinking.common.indexing.TFIDF3x;
 
@@ -58,6 +59,95 @@ public class DocumentUtils {
         return doc;
     }
 
+    /**
+     * Create a Document with the cheap SimpleTokenizer instead of StanfordNER, for
+     * documents whose mentions are given.
+     *
+     * @param content
+     * @return The document, its sentences have no mentions.
+     */
+    public static Document tokenizeDocument(String content) {
+        Document doc = new Document();
+        doc.setOriginalText(content);
+
+        for (Sentence sentence : SimpleTokenizer.tokenize(content))
+            doc.addSentence(sentence);
+
+        return doc;
+    }
+
+    /**
+     * Add the given mentions to the sentences of a document, in place of the
+     * mentions found by a NER. Mentions overlapping an existing mention are skipped.
+     *
+     * @param doc A tokenized document.
+     * @param names The surface names of the mentions.
+     * @param offsets The character offsets of the mentions.
+     * @param types The entity types of the mentions (see normalizeType), null if unknown.
+     */
+    public static void addMentions(Document doc, List<String> names, List<Integer> offsets,
+                                   List<String> types) {
+        Map<Integer, Mention> tokMenMap = getIndex(doc);
+
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            int bPos = offsets.get(i), ePos = offsets.get(i) + name.length() - 1;
+            if (tokMenMap.containsKey(bPos) || tokMenMap.containsKey(ePos))
+                continue;
+
+            for (Sentence sentence : doc.getSentences()) {
+                List<Token> tokens = sentence.getTokens();
+                if (tokens.isEmpty() || bPos > tokens.get(tokens.size() - 1).getePosition())
+                    continue;
+
+                //the tokens covering the mention, which ends in this sentence
+                //if the sentence splitter made an error.
+                int startToken = -1, endToken = tokens.size() - 1;
+                for (int j = 0; j < tokens.size(); j++) {
+                    Token token = tokens.get(j);
+                    if (startToken < 0 && token.getePosition() >= bPos)
+                        startToken = j;
+                    if (token.getbPosition() > ePos) {
+                        endToken = j - 1;
+                        break;
+                    }
+                }
+
+                if (startToken < 0 || endToken < startToken)
+                    break;
+
+                String type = normalizeType(types == null ? null : types.get(i));
+                Mention m = new Mention(new Entity(name, name, type), Mention.NONE, startToken, endToken);
+                sentence.addMention(m);
+
+                for (int j = startToken; j <= endToken; j++) {
+                    tokMenMap.put(tokens.get(j).getbPosition(), m);
+                    tokMenMap.put(tokens.get(j).getePosition(), m);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * @param type An entity type given by the caller, e.g. PER, PERSON or Person.
+     * @return The matching Entity type constant, Entity.MISC if it is unknown.
+     */
+    public static String normalizeType(String type) {
+        if (type == null)
+            return Entity.MISC;
+
+        type = type.trim().toUpperCase();
+        if (type.equals(Entity.PERSON) || type.equals("PERSON"))
+            return Entity.PERSON;
+        if (type.equals(Entity.ORGANIZATION) || type.equals("ORGANIZATION"))
+            return Entity.ORGANIZATION;
+        if (type.equals(Entity.LOCATION) || type.equals("LOCATION") || type.equals(Entity.GPE))
+            return Entity.LOCATION;
+
+        return Entity.MISC;
+    }
+
     /**
      * Collect the index information to improve the mention creation process.
      *
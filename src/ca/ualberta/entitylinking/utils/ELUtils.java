@@ -18,6 +18,7 @@ package ca.ualberta.entitylinking.utils;
 import ca.ualberta.entitylinking.common.data.Entity;
 import ca.ualberta.entitylinking.common.data.Mention;
 import ca.ualberta.entitylinking.graph.algorithms.PersonalizedPageRank;
+import ca.ualberta.entitylinking.graph.algorithms.SemanticSignature;
 import ca.ualberta.entitylinking.graph.algorithms.WeightedPersonalizedPageRank;
 
 import java.io.BufferedReader;
@@ -27,7 +28,7 @@ import java.text.SimpleDateFormat;
 import java.util.*;
 
 public class ELUtils {
-    public static Map<Integer, List<Double>> computePageRankParallel(
+    public static Map<Integer, SemanticSignature> computePageRankParallel(
             Set<String> entities,
             Map<String, Integer> e2id,
             PersonalizedPageRank ranker) {
@@ -56,13 +57,26 @@ public class ELUtils {
      * @param ranker Algorithm for computing pagerank.
      * @return
      */
-    public static List<Double> computePageRank(Map<String, Double> prefMap,
-                                               Set<String> avoidSet,
-                                               Map<String, Integer> e2id,
-                                               PersonalizedPageRank ranker) {
-
+    public static double[] computePageRank(Map<String, Double> prefMap,
+                                           Set<String> avoidSet,
+                                           Map<String, Integer> e2id,
+                                           PersonalizedPageRank ranker) {
+        return computePageRank(prefMap, avoidSet, e2id, ranker, null);
+    }
 
-        List<Double> ranks = new ArrayList<Double>();
+    /**
+     * compute the pagerank by restarting from the nodes in entities, starting the
+     * iterations from a previous pagerank (e.g. of a preference differing in a few
+     * entities), which converges in fewer iterations than the uniform start.
+     *
+     * @param start The previous pagerank, null (or empty) to start from the uniform vector.
+     * @return The pagerank (not shared with the ranker), empty if it could not be computed.
+     */
+    public static double[] computePageRank(Map<String, Double> prefMap,
+                                           Set<String> avoidSet,
+                                           Map<String, Integer> e2id,
+                                           PersonalizedPageRank ranker,
+                                           double[] start) {
 
         double[] s = new double[e2id.size()];
         Arrays.fill(s, 0.0);
@@ -83,14 +97,113 @@ public class ELUtils {
             Arrays.fill(s, 1.0/s.length);
 
         ranker.setPreference(s);
+
+        double[] startVector = null;
+        if (start != null && start.length == e2id.size()) {
+            startVector = normalize(Arrays.copyOf(start, start.length));
+            if (!PersonalizedPageRank.isStochastic(startVector))
+                startVector = null;
+        }
+
+        ranker.setStart(startVector);
         double[] rank = ranker.computeRank();
+        //the start is kept by the ranker, do not leak it into the next computation.
+        if (startVector != null)
+            ranker.setStart(null);
         if (rank == null || rank.length != e2id.size())
-            return ranks;
+            return new double[0];
+
+        return Arrays.copyOf(rank, rank.length);
+    }
+
+    /**
+     * Compose the pagerank of a preference over several entities from the pageranks
+     * of the single entities, as personalized pagerank is linear in the preference
+     * vector: the result is the sum of the entity pageranks weighted by the
+     * (normalized) preference. It equals computePageRank() up to the rank mass lost
+     * at dangling nodes and the truncated iterations (and the residual of sparse
+     * signatures, see signatureTopK).
+     *
+     * @param prefMap A map mapping each entity to its preference weight.
+     * @param avoidSet The set of entities left out of the preference.
+     * @param e2id
+     * @param entRanks The pagerank of each entity by entity id, see computePageRankParallel().
+     * @return The pagerank, or null if some entity has no pagerank, or no entity is left.
+     */
+    public static double[] composePageRank(Map<String, Double> prefMap,
+                                           Set<String> avoidSet,
+                                           Map<String, Integer> e2id,
+                                           Map<Integer, SemanticSignature> entRanks) {
+        if (entRanks == null)
+            return null;
+
+        double[] rank = new double[e2id.size()];
+        double sum = 0.0;
+        for (String name : prefMap.keySet()) {
+            if (!e2id.containsKey(name))
+                continue;
+
+            if (avoidSet != null && avoidSet.contains(name))
+                continue;
+
+            double weight = prefMap.get(name);
+            if (weight == 0.0)
+                continue;
 
-        for (int i = 0; i < rank.length; i++)
-            ranks.add(rank[i]);
+            SemanticSignature entRank = entRanks.get(e2id.get(name));
+            if (entRank == null || entRank.size() != rank.length)
+                return null;
+
+            entRank.addTo(rank, weight);
+            sum += weight;
+        }
+
+        if (Double.compare(sum, 0) == 0)
+            return null;
+
+        return normalize(rank);
+    }
+
+    /**
+     * The canonical form of a preference: the entities (in the graph, not avoided,
+     * and with a non-zero weight) that computePageRank() restarts from, sorted by
+     * name. Two preferences with equal keys have the same pagerank.
+     *
+     * @param prefMap
+     * @param avoidSet
+     * @param e2id
+     * @return The key, comparable with equals() and hashCode().
+     */
+    public static Map<String, Double> preferenceKey(Map<String, Double> prefMap,
+                                                    Set<String> avoidSet,
+                                                    Map<String, Integer> e2id) {
+        Map<String, Double> key = new TreeMap<String, Double>();
+        for (String name : prefMap.keySet()) {
+            if (!e2id.containsKey(name))
+                continue;
+
+            if (avoidSet != null && avoidSet.contains(name))
+                continue;
+
+            Double weight = prefMap.get(name);
+            if (weight == null || weight == 0.0)
+                continue;
+
+            key.put(name, weight);
+        }
+
+        return key;
+    }
+
+    /**
+     * @return The L1 distance between two vectors of the same length.
+     */
+    public static double distanceL1(double[] v1, double[] v2) {
+        double dist = 0.0;
+        for (int i = 0; i < v1.length; i++)
+            dist += Math.abs(v1[i] - v2[i]);
 
-        return ranks;
+        return dist;
     }
 
     /**
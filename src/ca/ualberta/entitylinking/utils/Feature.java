@@ -57,6 +57,31 @@ public class Feature implements Comparable<Feature> {
         	}
     }
 
+    /**
+     * The score that compareTo() ranks the candidates by under the current rank scheme.
+     * @return
+     */
+    public double score() {
+        switch (WNEDConfig.rankScheme) {
+            case WNEDConfig.PRIOR_SEM:
+                return prior * semSim;
+            case WNEDConfig.LOCAL_SEM:
+                return local * semSim;
+            case WNEDConfig.NOR:
+                return 1 - (1 - prior) * (1 - local) * (1 - semSim);
+            case WNEDConfig.LINEAR: {
+                double alpha = WNEDConfig.priorWeight, beta = WNEDConfig.localWeight, gama = 1-alpha-beta;
+                return alpha * prior + beta * local + gama * semSim;
+            }
+            case WNEDConfig.MULTIPLY: {
+                double alpha = WNEDConfig.priorWeight, beta = 1 - alpha;
+                return alpha * prior * semSim + beta * local * semSim;
+            }
+            default:
+                return semSim;
+        }
+    }
+
     public int compareToVote(Feature target) {
         if (prior == target.prior &&
                 local == target.local &&
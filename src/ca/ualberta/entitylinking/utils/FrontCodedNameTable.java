@@ -0,0 +1,329 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.utils;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * A MappedNameTable with front-coded names, for the entity names of the graphs:
+ * sorted titles share long prefixes (e.g. "List_of_..."), so each name only
+ * stores the suffix that differs from the previous one.
+ *
+ * The names are cut into buckets of bucketSize names. The first name of a
+ * bucket is stored in full, the others as the length of the prefix shared with
+ * the previous name and the rest of their bytes (all lengths in variable-byte
+ * codes). A name is found by a binary search over the first names of the
+ * buckets, and a scan of a single bucket.
+ *
+ * The file layout (big endian) is
+ * <pre>
+ *     int magic, int version, int n, int numIds, int bucketSize, int numBuckets, int maxLength
+ *     int[numBuckets + 1] buckets   the i-th bucket is bytes[buckets[i], buckets[i+1])
+ *     int[n]              ids       the id of the i-th name
+ *     int[numIds]         byId      the index of the name of each id, -1 if none
+ *     byte[]              bytes     the buckets
+ * </pre>
+ * Tables are limited to 2GB.
+ */
+public class FrontCodedNameTable extends NameTable {
+	private static final int MAGIC = 0x574e4643;	//"WNFC"
+	private static final int VERSION = 1;
+	private static final int HEADER = 28;
+	public static final int BUCKET_SIZE = 16;
+
+	private MappedByteBuffer buf = null;
+	private int n = 0;
+	private int numIds = 0;
+	private int bucketSize = 0;
+	private int numBuckets = 0;
+	private int maxLength = 0;
+	private int bucketsPos = 0;
+	private int idsPos = 0;
+	private int byIdPos = 0;
+	private int bytesPos = 0;
+
+	private FrontCodedNameTable(MappedByteBuffer buf) throws IOException {
+		this.buf = buf;
+		if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION)
+			throw new IOException("Not a front-coded name table");
+
+		n = buf.getInt(8);
+		numIds = buf.getInt(12);
+		bucketSize = buf.getInt(16);
+		numBuckets = buf.getInt(20);
+		maxLength = buf.getInt(24);
+		bucketsPos = HEADER;
+		idsPos = bucketsPos + 4 * (numBuckets + 1);
+		byIdPos = idsPos + 4 * n;
+		bytesPos = byIdPos + 4 * numIds;
+	}
+
+	/**
+	 * Map a table written by write().
+	 *
+	 * @param file
+	 * @return The table.
+	 * @throws IOException
+	 */
+	public static FrontCodedNameTable open(String file) throws IOException {
+		return new FrontCodedNameTable(map(file));
+	}
+
+	private static int vbyteLength(int v) {
+		int len = 1;
+		while ((v >>>= 7) != 0)
+			len++;
+
+		return len;
+	}
+
+	private static void writeVByte(DataOutputStream out, int v) throws IOException {
+		while ((v & ~0x7f) != 0) {
+			out.write((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		out.write(v);
+	}
+
+	private static int commonPrefix(byte[] a, byte[] b) {
+		int len = Math.min(a.length, b.length);
+		int i = 0;
+		while (i < len && a[i] == b[i])
+			i++;
+
+		return i;
+	}
+
+	/**
+	 * Write a name to id map as a table. The ids must be non-negative.
+	 *
+	 * @param map
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void write(Map<String, Integer> map, String file) throws IOException {
+		SortedNames names = new SortedNames(map);
+		int size = names.size;
+		byte[][] keys = names.names;
+
+		//the coded length of each bucket, to write the offsets first.
+		int numBuckets = (size + BUCKET_SIZE - 1) / BUCKET_SIZE;
+		int[] buckets = new int[numBuckets + 1];
+		long offset = 0;
+		for (int i = 0; i < size; i++) {
+			byte[] name = keys[i];
+			if (i % BUCKET_SIZE == 0) {
+				offset += vbyteLength(name.length) + name.length;
+			} else {
+				int lcp = commonPrefix(keys[i - 1], name);
+				offset += vbyteLength(lcp) + vbyteLength(name.length - lcp) + name.length - lcp;
+			}
+
+			checkSize(HEADER + 4L * (numBuckets + 1 + size + names.numIds) + offset, file);
+			if ((i + 1) % BUCKET_SIZE == 0 || i == size - 1)
+				buckets[i / BUCKET_SIZE + 1] = (int) offset;
+		}
+
+		DataOutputStream out = create(file);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(size);
+			out.writeInt(names.numIds);
+			out.writeInt(BUCKET_SIZE);
+			out.writeInt(numBuckets);
+			out.writeInt(names.maxLength);
+
+			for (int i = 0; i <= numBuckets; i++)
+				out.writeInt(buckets[i]);
+			for (int i = 0; i < size; i++)
+				out.writeInt(names.ids[i]);
+			for (int i = 0; i < names.numIds; i++)
+				out.writeInt(names.byId[i]);
+
+			for (int i = 0; i < size; i++) {
+				byte[] name = keys[i];
+				int lcp = 0;
+				if (i % BUCKET_SIZE != 0) {
+					lcp = commonPrefix(keys[i - 1], name);
+					writeVByte(out, lcp);
+				}
+				writeVByte(out, name.length - lcp);
+				out.write(name, lcp, name.length - lcp);
+			}
+		} finally {
+			out.close();
+		}
+
+		//only replace an existing table with a complete one.
+		commit(file);
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * Reads the names of a bucket in order, into a buffer of maxLength bytes.
+	 * A reader is used by a single thread.
+	 */
+	private class BucketReader {
+		byte[] name = new byte[maxLength];
+		int length = 0;
+		int pos = 0;
+		int index = 0;
+		int end = 0;
+
+		BucketReader(int bucket) {
+			pos = bytesPos + buf.getInt(bucketsPos + 4 * bucket);
+			index = bucket * bucketSize;
+			end = Math.min(n, index + bucketSize);
+		}
+
+		private int readVByte() {
+			int v = 0, shift = 0, b = 0;
+			do {
+				b = buf.get(pos++);
+				v |= (b & 0x7f) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+
+			return v;
+		}
+
+		/**
+		 * Decode the next name of the bucket into name[0, length).
+		 *
+		 * @return False at the end of the bucket.
+		 */
+		boolean next() {
+			if (index >= end)
+				return false;
+
+			int lcp = index % bucketSize == 0 ? 0 : readVByte();
+			int len = readVByte();
+			for (int j = 0; j < len; j++)
+				name[lcp + j] = buf.get(pos++);
+			length = lcp + len;
+			index++;
+
+			return true;
+		}
+
+		/**
+		 * Compare the current name with the given bytes.
+		 */
+		int compare(byte[] key) {
+			int min = Math.min(length, key.length);
+			for (int j = 0; j < min; j++) {
+				int c = (name[j] & 0xff) - (key[j] & 0xff);
+				if (c != 0)
+					return c;
+			}
+
+			return length - key.length;
+		}
+	}
+
+	/**
+	 * Compare the first name of a bucket with the given bytes, in place.
+	 */
+	private int compareFirst(int bucket, byte[] key) {
+		int pos = bytesPos + buf.getInt(bucketsPos + 4 * bucket);
+		int len = 0, shift = 0, b = 0;
+		do {
+			b = buf.get(pos++);
+			len |= (b & 0x7f) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		int min = Math.min(len, key.length);
+		for (int j = 0; j < min; j++) {
+			int c = (buf.get(pos + j) & 0xff) - (key[j] & 0xff);
+			if (c != 0)
+				return c;
+		}
+
+		return len - key.length;
+	}
+
+	private int indexOf(String name) {
+		byte[] key = name.getBytes(StandardCharsets.UTF_8);
+
+		//the last bucket whose first name is not after the key.
+		int low = 0, high = numBuckets - 1, bucket = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int c = compareFirst(mid, key);
+			if (c == 0)
+				return mid * bucketSize;
+			if (c < 0) {
+				bucket = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+
+		if (bucket < 0)
+			return -1;
+
+		BucketReader reader = new BucketReader(bucket);
+		while (reader.next()) {
+			int c = reader.compare(key);
+			if (c == 0)
+				return reader.index - 1;
+			if (c > 0)
+				break;
+		}
+
+		return -1;
+	}
+
+	@Override
+	protected String nameAt(int i) {
+		BucketReader reader = new BucketReader(i / bucketSize);
+		while (reader.index <= i)
+			reader.next();
+
+		return new String(reader.name, 0, reader.length, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	protected int idAt(int i) {
+		return buf.getInt(idsPos + 4 * i);
+	}
+
+	@Override
+	public int getId(String name) {
+		int i = indexOf(name);
+		return i < 0 ? -1 : idAt(i);
+	}
+
+	@Override
+	public String getName(int id) {
+		if (id < 0 || id >= numIds)
+			return null;
+
+		int i = buf.getInt(byIdPos + 4 * id);
+		return i < 0 ? null : nameAt(i);
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative long values (e.g. nanoseconds) in the
+ * style of HdrHistogram: values are counted in log-linear buckets, each power
+ * of two is split into 2^SUB_BITS sub-buckets, so the relative error of the
+ * reported percentiles is below 1/2^SUB_BITS (about 3%) over the whole range.
+ */
+public class Histogram {
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int NUM_BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+	private AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+	private LongAdder count = new LongAdder();
+	private LongAdder sum = new LongAdder();
+	private AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+	private AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+	private static int bucketIndex(long value) {
+		if (value < SUB_COUNT)
+			return (int) value;
+
+		int exp = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exp - SUB_BITS;
+		return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) & (SUB_COUNT - 1));
+	}
+
+	/**
+	 * @param index
+	 * @return The largest value that falls into the bucket.
+	 */
+	private static long bucketUpperBound(int index) {
+		if (index < SUB_COUNT)
+			return index;
+
+		int shift = index / SUB_COUNT - 1;
+		long sub = index % SUB_COUNT;
+		return ((SUB_COUNT + sub + 1) << shift) - 1;
+	}
+
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+
+		counts.incrementAndGet(bucketIndex(value));
+		count.increment();
+		sum.add(value);
+
+		long m;
+		while (value > (m = max.get()) && !max.compareAndSet(m, value));
+		while (value < (m = min.get()) && !min.compareAndSet(m, value));
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getSum() {
+		return sum.sum();
+	}
+
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0.0 : sum.sum() * 1.0 / n;
+	}
+
+	public long getMax() {
+		return count.sum() == 0 ? 0 : max.get();
+	}
+
+	public long getMin() {
+		return count.sum() == 0 ? 0 : min.get();
+	}
+
+	/**
+	 * @param percentile In [0, 100].
+	 * @return The value at the given percentile (the upper bound of its bucket,
+	 *         capped by the largest recorded value).
+	 */
+	public long getPercentile(double percentile) {
+		long n = count.sum();
+		if (n == 0)
+			return 0;
+
+		long target = (long) Math.ceil(percentile / 100.0 * n);
+		if (target < 1)
+			target = 1;
+
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= target)
+				return Math.min(bucketUpperBound(i), getMax());
+		}
+
+		return getMax();
+	}
+}
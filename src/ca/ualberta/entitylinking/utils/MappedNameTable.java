@@ -0,0 +1,189 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.utils;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * A read-only name to id table stored in a memory-mapped file, replacing the
+ * (Java serialized or FieldCache built) HashMaps of names. Opening a table only
+ * maps the file, so it takes no time and no heap, and the pages are shared by
+ * all the processes on the machine.
+ *
+ * The file layout (big endian) is
+ * <pre>
+ *     int magic, int version, int n, int numIds
+ *     int[n + 1] offsets   the UTF-8 bytes of the i-th name are bytes[offsets[i], offsets[i+1])
+ *     int[n]     ids       the id of the i-th name
+ *     int[numIds] byId     the index of the name of each id, -1 if none
+ *     byte[]     bytes     the names, sorted by their (unsigned) UTF-8 bytes
+ * </pre>
+ * A name is found by a binary search over the bytes, without decoding them.
+ * Tables are limited to 2GB.
+ */
+public class MappedNameTable extends NameTable {
+	private static final int MAGIC = 0x574e4454;	//"WNDT"
+	private static final int VERSION = 1;
+	private static final int HEADER = 16;
+
+	private MappedByteBuffer buf = null;
+	private int n = 0;
+	private int numIds = 0;
+	private int offsetsPos = 0;
+	private int idsPos = 0;
+	private int byIdPos = 0;
+	private int bytesPos = 0;
+
+	private MappedNameTable(MappedByteBuffer buf) throws IOException {
+		this.buf = buf;
+		if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION)
+			throw new IOException("Not a name table");
+
+		n = buf.getInt(8);
+		numIds = buf.getInt(12);
+		offsetsPos = HEADER;
+		idsPos = offsetsPos + 4 * (n + 1);
+		byIdPos = idsPos + 4 * n;
+		bytesPos = byIdPos + 4 * numIds;
+	}
+
+	/**
+	 * Map a table written by write().
+	 *
+	 * @param file
+	 * @return The table.
+	 * @throws IOException
+	 */
+	public static MappedNameTable open(String file) throws IOException {
+		return new MappedNameTable(map(file));
+	}
+
+	/**
+	 * Write a name to id map as a table. The ids must be non-negative.
+	 *
+	 * @param map
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void write(Map<String, Integer> map, String file) throws IOException {
+		SortedNames names = new SortedNames(map);
+		int size = names.size;
+
+		DataOutputStream out = create(file);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(size);
+			out.writeInt(names.numIds);
+
+			long offset = 0;
+			out.writeInt(0);
+			for (int i = 0; i < size; i++) {
+				offset += names.names[i].length;
+				checkSize(HEADER + 4L * (2 * size + 1 + names.numIds) + offset, file);
+				out.writeInt((int) offset);
+			}
+
+			for (int i = 0; i < size; i++)
+				out.writeInt(names.ids[i]);
+			for (int i = 0; i < names.numIds; i++)
+				out.writeInt(names.byId[i]);
+			for (int i = 0; i < size; i++)
+				out.write(names.names[i]);
+		} finally {
+			out.close();
+		}
+
+		//only replace an existing table with a complete one.
+		commit(file);
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	private int offset(int i) {
+		return buf.getInt(offsetsPos + 4 * i);
+	}
+
+	/**
+	 * Compare the i-th name of the table with the given bytes.
+	 */
+	private int compare(int i, byte[] key) {
+		int begin = bytesPos + offset(i);
+		int len = offset(i + 1) - offset(i);
+		int min = Math.min(len, key.length);
+		for (int j = 0; j < min; j++) {
+			int c = (buf.get(begin + j) & 0xff) - (key[j] & 0xff);
+			if (c != 0)
+				return c;
+		}
+
+		return len - key.length;
+	}
+
+	private int indexOf(String name) {
+		byte[] key = name.getBytes(StandardCharsets.UTF_8);
+		int low = 0, high = n - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int c = compare(mid, key);
+			if (c < 0)
+				low = mid + 1;
+			else if (c > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+
+		return -1;
+	}
+
+	@Override
+	protected String nameAt(int i) {
+		int begin = offset(i);
+		byte[] bytes = new byte[offset(i + 1) - begin];
+		for (int j = 0; j < bytes.length; j++)
+			bytes[j] = buf.get(bytesPos + begin + j);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	protected int idAt(int i) {
+		return buf.getInt(idsPos + 4 * i);
+	}
+
+	@Override
+	public int getId(String name) {
+		int i = indexOf(name);
+		return i < 0 ? -1 : idAt(i);
+	}
+
+	@Override
+	public String getName(int id) {
+		if (id < 0 || id >= numIds)
+			return null;
+
+		int i = buf.getInt(byIdPos + 4 * id);
+		return i < 0 ? null : nameAt(i);
+	}
+}
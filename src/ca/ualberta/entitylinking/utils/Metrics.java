@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.utils;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * A process wide registry of timers, value histograms and counters.
+ *
+ * Timers record nanoseconds, e.g.
+ * <pre>
+ *     long begin = System.nanoTime();
+ *     ...
+ *     Metrics.time("buildGraph", begin);
+ * </pre>
+ * Recording is lock-free and does not allocate once a metric exists, so it can
+ * be used on the hot path. report() formats everything recorded so far.
+ */
+public class Metrics {
+	private static Logger LOGGER = LogManager.getLogger(Metrics.class);
+
+	private static Map<String, Histogram> timers = new ConcurrentHashMap<String, Histogram>();
+	private static Map<String, Histogram> values = new ConcurrentHashMap<String, Histogram>();
+	private static Map<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+
+	private static Histogram get(Map<String, Histogram> map, String name) {
+		Histogram h = map.get(name);
+		if (h == null) {
+			synchronized (map) {
+				h = map.get(name);
+				if (h == null) {
+					h = new Histogram();
+					map.put(name, h);
+				}
+			}
+		}
+
+		return h;
+	}
+
+	/**
+	 * Record the time elapsed since begin.
+	 *
+	 * @param name
+	 * @param begin A System.nanoTime() value.
+	 * @return The current System.nanoTime(), to chain consecutive stages.
+	 */
+	public static long time(String name, long begin) {
+		long now = System.nanoTime();
+		get(timers, name).record(now - begin);
+		return now;
+	}
+
+	/**
+	 * Record a value, e.g. the number of nodes of a graph.
+	 */
+	public static void record(String name, long value) {
+		get(values, name).record(value);
+	}
+
+	public static void increment(String name) {
+		add(name, 1);
+	}
+
+	public static void add(String name, long delta) {
+		LongAdder c = counters.get(name);
+		if (c == null) {
+			synchronized (counters) {
+				c = counters.get(name);
+				if (c == null) {
+					c = new LongAdder();
+					counters.put(name, c);
+				}
+			}
+		}
+
+		c.add(delta);
+	}
+
+	public static Histogram getTimer(String name) {
+		return timers.get(name);
+	}
+
+	public static Histogram getValues(String name) {
+		return values.get(name);
+	}
+
+	public static long getCount(String name) {
+		LongAdder c = counters.get(name);
+		return c == null ? 0 : c.sum();
+	}
+
+	/**
+	 * @return A table of all the metrics, timers are in milliseconds.
+	 */
+	public static String report() {
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(String.format("%-32s %10s %12s %10s %10s %10s %10s %10s%n",
+				"timer (ms)", "count", "total", "mean", "p50", "p90", "p99", "max"));
+		for (Map.Entry<String, Histogram> e : new TreeMap<String, Histogram>(timers).entrySet()) {
+			Histogram h = e.getValue();
+			sb.append(String.format("%-32s %10d %12.1f %10.3f %10.3f %10.3f %10.3f %10.3f%n",
+					e.getKey(), h.getCount(), h.getSum() / 1e6, h.getMean() / 1e6,
+					h.getPercentile(50) / 1e6, h.getPercentile(90) / 1e6,
+					h.getPercentile(99) / 1e6, h.getMax() / 1e6));
+		}
+
+		sb.append(String.format("%n%-32s %10s %12s %10s %10s %10s %10s %10s%n",
+				"value", "count", "total", "mean", "p50", "p90", "p99", "max"));
+		for (Map.Entry<String, Histogram> e : new TreeMap<String, Histogram>(values).entrySet()) {
+			Histogram h = e.getValue();
+			sb.append(String.format("%-32s %10d %12d %10.1f %10d %10d %10d %10d%n",
+					e.getKey(), h.getCount(), h.getSum(), h.getMean(),
+					h.getPercentile(50), h.getPercentile(90), h.getPercentile(99), h.getMax()));
+		}
+
+		sb.append(String.format("%n%-32s %10s%n", "counter", "count"));
+		for (Map.Entry<String, LongAdder> e : new TreeMap<String, LongAdder>(counters).entrySet())
+			sb.append(String.format("%-32s %10d%n", e.getKey(), e.getValue().sum()));
+
+		return sb.toString();
+	}
+
+	/**
+	 * Write the report to the given file, or to the log if no file is given.
+	 *
+	 * @param file
+	 */
+	public static void dump(String file) {
+		if (file == null || file.isEmpty()) {
+			LOGGER.info("[metrics]\n" + report());
+			return;
+		}
+
+		FileWriter writer = null;
+		try {
+			writer = new FileWriter(file);
+			writer.write(report());
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			try {
+				if (writer != null) writer.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		LOGGER.info("Metrics written to " + file);
+	}
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only table of names sorted by their (unsigned) UTF-8 bytes, each with
+ * an id, viewed as name to id and id to name maps. See MappedNameTable and
+ * FrontCodedNameTable for the file formats. Tables are memory-mapped, and
+ * limited to 2GB.
+ */
+public abstract class NameTable {
+	protected static final Comparator<byte[]> UTF8_ORDER = new Comparator<byte[]>() {
+		public int compare(byte[] a, byte[] b) {
+			int len = Math.min(a.length, b.length);
+			for (int i = 0; i < len; i++) {
+				int c = (a[i] & 0xff) - (b[i] & 0xff);
+				if (c != 0)
+					return c;
+			}
+
+			return a.length - b.length;
+		}
+	};
+
+	/**
+	 * The entries of a name to id map, sorted by the bytes of their names, as
+	 * the tables store them.
+	 */
+	protected static class SortedNames {
+		int size = 0;
+		int numIds = 0;
+		int maxLength = 0;
+		//the UTF-8 bytes and the id of the i-th name.
+		byte[][] names = null;
+		int[] ids = null;
+		//the index of the name of each id, -1 if none.
+		int[] byId = null;
+
+		/**
+		 * @param map The ids must be non-negative.
+		 */
+		SortedNames(Map<String, Integer> map) {
+			byte[][] keys = new byte[map.size()][];
+			int[] values = new int[map.size()];
+			for (Map.Entry<String, Integer> e : map.entrySet()) {
+				if (e.getKey() == null || e.getValue() == null)
+					continue;
+
+				keys[size] = e.getKey().getBytes(StandardCharsets.UTF_8);
+				values[size] = e.getValue();
+				numIds = Math.max(numIds, values[size] + 1);
+				maxLength = Math.max(maxLength, keys[size].length);
+				size++;
+			}
+
+			//sort the entries by the bytes of their names.
+			final byte[][] k = keys;
+			Integer[] sorted = new Integer[size];
+			for (int i = 0; i < size; i++)
+				sorted[i] = i;
+			Arrays.sort(sorted, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return UTF8_ORDER.compare(k[a], k[b]);
+				}
+			});
+
+			names = new byte[size][];
+			ids = new int[size];
+			byId = new int[numIds];
+			Arrays.fill(byId, -1);
+			for (int i = 0; i < size; i++) {
+				names[i] = keys[sorted[i]];
+				ids[i] = values[sorted[i]];
+				byId[ids[i]] = i;
+			}
+		}
+	}
+
+	/**
+	 * Map a table file read-only. The mapping stays valid after the file is closed.
+	 *
+	 * @param file
+	 * @return The mapped file.
+	 * @throws IOException
+	 */
+	protected static MappedByteBuffer map(String file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException(file + " is larger than 2GB");
+
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @param size The size a table would have, in bytes.
+	 * @throws IOException If the table would not be mappable.
+	 */
+	protected static void checkSize(long size, String file) throws IOException {
+		if (size > Integer.MAX_VALUE)
+			throw new IOException(file + " would be larger than 2GB");
+	}
+
+	/**
+	 * @return A stream to the temporary file of a table, see commit().
+	 */
+	protected static DataOutputStream create(String file) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file + ".tmp"), 1 << 16));
+	}
+
+	/**
+	 * Replace the table with its temporary file, once it is complete.
+	 */
+	protected static void commit(String file) throws IOException {
+		File tmp = new File(file + ".tmp");
+		File target = new File(file);
+		if (target.exists() && !target.delete())
+			throw new IOException("Cannot replace " + file);
+		if (!tmp.renameTo(target))
+			throw new IOException("Cannot rename " + tmp + " to " + file);
+	}
+
+	/**
+	 * @return The number of names.
+	 */
+	public abstract int size();
+
+	/**
+	 * @param name
+	 * @return The id of the name, -1 if it is not in the table.
+	 */
+	public abstract int getId(String name);
+
+	/**
+	 * @param id
+	 * @return The name with the given id, null if there is none.
+	 */
+	public abstract String getName(int id);
+
+	/**
+	 * @return The i-th name in sorted order.
+	 */
+	protected abstract String nameAt(int i);
+
+	/**
+	 * @return The id of the i-th name in sorted order.
+	 */
+	protected abstract int idAt(int i);
+
+	/**
+	 * @return A read-only name to id map view of the table.
+	 */
+	public Map<String, Integer> asMap() {
+		return new AbstractMap<String, Integer>() {
+			@Override
+			public Integer get(Object key) {
+				if (!(key instanceof String))
+					return null;
+
+				int id = getId((String) key);
+				return id < 0 ? null : id;
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return key instanceof String && getId((String) key) >= 0;
+			}
+
+			@Override
+			public int size() {
+				return NameTable.this.size();
+			}
+
+			@Override
+			public Set<Map.Entry<String, Integer>> entrySet() {
+				return new AbstractSet<Map.Entry<String, Integer>>() {
+					public int size() {
+						return NameTable.this.size();
+					}
+
+					public Iterator<Map.Entry<String, Integer>> iterator() {
+						return new Iterator<Map.Entry<String, Integer>>() {
+							int i = 0;
+
+							public boolean hasNext() {
+								return i < NameTable.this.size();
+							}
+
+							public Map.Entry<String, Integer> next() {
+								if (!hasNext())
+									throw new NoSuchElementException();
+
+								Map.Entry<String, Integer> e =
+										new AbstractMap.SimpleImmutableEntry<String, Integer>(nameAt(i), idAt(i));
+								i++;
+								return e;
+							}
+
+							public void remove() {
+								throw new UnsupportedOperationException();
+							}
+						};
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * @return A read-only id to name map view of the table.
+	 */
+	public Map<Integer, String> asInverseMap() {
+		return new AbstractMap<Integer, String>() {
+			@Override
+			public String get(Object key) {
+				return key instanceof Integer ? getName((Integer) key) : null;
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return get(key) != null;
+			}
+
+			@Override
+			public int size() {
+				return NameTable.this.size();
+			}
+
+			@Override
+			public Set<Map.Entry<Integer, String>> entrySet() {
+				return new AbstractSet<Map.Entry<Integer, String>>() {
+					public int size() {
+						return NameTable.this.size();
+					}
+
+					public Iterator<Map.Entry<Integer, String>> iterator() {
+						return new Iterator<Map.Entry<Integer, String>>() {
+							int i = 0;
+
+							public boolean hasNext() {
+								return i < NameTable.this.size();
+							}
+
+							public Map.Entry<Integer, String> next() {
+								if (!hasNext())
+									throw new NoSuchElementException();
+
+								Map.Entry<Integer, String> e =
+										new AbstractMap.SimpleImmutableEntry<Integer, String>(idAt(i), nameAt(i));
+								i++;
+								return e;
+							}
+
+							public void remove() {
+								throw new UnsupportedOperationException();
+							}
+						};
+					}
+				};
+			}
+		};
+	}
+}
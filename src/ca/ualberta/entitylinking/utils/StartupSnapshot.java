@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.utils;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import ca.ualberta.entitylinking.common.indexing.AliasLuceneIndex;
+import ca.ualberta.entitylinking.common.indexing.TFIDF3x;
+import ca.ualberta.entitylinking.config.WNEDConfig;
+
+/**
+ * The startup snapshot: the name tables that are otherwise rebuilt on every
+ * launch (the document names of the TFIDF index and the aliases of the alias
+ * index), stored as MappedNameTables in snapshotDir. The graphs map their own
+ * name tables (see WeightedGraph.storeNameIDMap()).
+ *
+ * Prepare the snapshot once, after the data is built or updated:
+ * <pre>
+ *     java -cp $CP ca.ualberta.entitylinking.utils.StartupSnapshot el.config
+ * </pre>
+ * With snapshotDir set, the linker maps the tables instead of building the maps,
+ * and opens the alias index in place instead of copying it into memory. A table
+ * older than the data it was prepared from is ignored.
+ */
+public class StartupSnapshot {
+	private static Logger LOGGER = LogManager.getLogger(StartupSnapshot.class);
+
+	public static final String TFIDF = "tfidf";
+	public static final String ALIAS = "alias";
+
+	//set while the snapshot is prepared, so the data is loaded the usual way.
+	private static volatile boolean preparing = false;
+
+	/**
+	 * @return True if the snapshot is configured.
+	 */
+	public static boolean isEnabled() {
+		return !preparing && WNEDConfig.snapshotDir != null && !WNEDConfig.snapshotDir.isEmpty();
+	}
+
+	/**
+	 * @param name TFIDF or ALIAS.
+	 * @return The file of the table.
+	 */
+	public static String file(String name) {
+		return WNEDConfig.snapshotDir + "/" + name + ".names";
+	}
+
+	/**
+	 * Map a table of the snapshot.
+	 *
+	 * @param name TFIDF or ALIAS.
+	 * @param source The file or directory the table was prepared from.
+	 * @return The table, or null if there is no (up to date) table.
+	 */
+	public static MappedNameTable open(String name, String source) {
+		if (!isEnabled())
+			return null;
+
+		File file = new File(file(name));
+		if (!file.exists()) {
+			LOGGER.warn("No " + name + " table in the snapshot " + WNEDConfig.snapshotDir);
+			return null;
+		}
+
+		if (lastModified(new File(source)) > file.lastModified()) {
+			LOGGER.warn("The " + name + " table is older than " + source + ", prepare the snapshot again");
+			return null;
+		}
+
+		try {
+			MappedNameTable table = MappedNameTable.open(file.getPath());
+			LOGGER.info("Mapped " + table.size() + " names from " + file);
+			return table;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return The latest modification time of the file, or of the files in the directory.
+	 */
+	private static long lastModified(File file) {
+		if (!file.isDirectory())
+			return file.lastModified();
+
+		long time = 0;
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File f : files)
+				time = Math.max(time, f.lastModified());
+		}
+
+		return time;
+	}
+
+	/**
+	 * Build the tables of the snapshot from the data given in the configuration.
+	 */
+	public static void prepare() throws IOException {
+		if (WNEDConfig.snapshotDir == null || WNEDConfig.snapshotDir.isEmpty())
+			throw new IOException("snapshotDir is not set");
+
+		new File(WNEDConfig.snapshotDir).mkdirs();
+		preparing = true;
+		try {
+			long begin = System.currentTimeMillis();
+			TFIDF3x tfidfIndex = new TFIDF3x();
+			MappedNameTable.write(tfidfIndex.getNameIDMap(), file(TFIDF));
+			LOGGER.info(ELUtils.currentTime() + "Wrote the TFIDF document names in "
+					+ (System.currentTimeMillis() - begin) + " ms");
+			tfidfIndex = null;
+
+			begin = System.currentTimeMillis();
+			AliasLuceneIndex a2eIndex = new AliasLuceneIndex();
+			if (a2eIndex.loadIndex(WNEDConfig.a2eIndexDir, false)) {
+				MappedNameTable.write(a2eIndex.getDocIDMap(), file(ALIAS));
+				LOGGER.info(ELUtils.currentTime() + "Wrote the aliases in "
+						+ (System.currentTimeMillis() - begin) + " ms");
+			}
+		} finally {
+			preparing = false;
+		}
+	}
+
+	/**
+	 * @param args
+	 * 		args[0] is the config file: e.g. el.config, with snapshotDir set.
+	 */
+	public static void main(String[] args) throws IOException {
+		WNEDConfig.loadConfiguration(args[0]);
+		prepare();
+	}
+}
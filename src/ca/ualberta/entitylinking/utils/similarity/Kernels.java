@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 Zhaochen Guo
+ *
+ * This file is part of WNED.
+ * WNED is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * WNED is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with WNED.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.ualberta.entitylinking.utils.similarity;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import ca.ualberta.entitylinking.config.WNEDConfig;
+
+/**
+ * The loops over dense vectors used by the similarities and the power method.
+ *
+ * The scalar kernels below are always available. With simdKernels, get() returns
+ * the kernels of VectorKernels instead, which use the Vector API
+ * (jdk.incubator.vector). They are only built by the jdk17 profile (src-vector),
+ * and need --add-modules jdk.incubator.vector at runtime; if they are missing,
+ * the scalar kernels are used.
+ */
+public class Kernels {
+	private static Logger LOGGER = LogManager.getLogger(Kernels.class);
+
+	private static final double LOG2 = Math.log(2.0);
+
+	private static final Kernels SCALAR = new Kernels();
+	private static volatile Kernels kernels = null;
+
+	/**
+	 * @return The kernels selected by simdKernels.
+	 */
+	public static Kernels get() {
+		Kernels k = kernels;
+		if (k == null) {
+			k = WNEDConfig.simdKernels ? vector() : null;
+			if (k == null)
+				k = SCALAR;
+			kernels = k;
+		}
+
+		return k;
+	}
+
+	public static Kernels scalar() {
+		return SCALAR;
+	}
+
+	/**
+	 * @return The Vector API kernels, or null if they cannot be loaded.
+	 */
+	public static Kernels vector() {
+		try {
+			return Class.forName("ca.ualberta.entitylinking.utils.similarity.VectorKernels")
+					.asSubclass(Kernels.class).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError t) {
+			LOGGER.warn("The vector kernels are not available, using the scalar ones: " + t);
+			return null;
+		}
+	}
+
+	/**
+	 * @return The name of the kernels, e.g. for reports.
+	 */
+	public String getName() {
+		return "scalar";
+	}
+
+	/**
+	 * @return The dot product of the first n elements of a and b.
+	 */
+	public double dot(double[] a, double[] b, int n) {
+		double sum = 0.0;
+		for (int i = 0; i < n; i++)
+			sum += a[i] * b[i];
+
+		return sum;
+	}
+
+	/**
+	 * @return The sum of squares of the first n elements of a.
+	 */
+	public double sumSquares(double[] a, int n) {
+		return dot(a, a, n);
+	}
+
+	/**
+	 * @return The L1 distance between the first n elements of a and b.
+	 */
+	public double distanceL1(double[] a, double[] b, int n) {
+		double sum = 0.0;
+		for (int i = 0; i < n; i++)
+			sum += Math.abs(a[i] - b[i]);
+
+		return sum;
+	}
+
+	/**
+	 * The KL divergence of VectorSimilarity.ZeroKLDivergence(): the elements of
+	 * p equal to 0 are skipped, and the elements of q below 0.000001 count as
+	 * gamma (10) bits.
+	 *
+	 * @return The divergence of the first n elements of p from q.
+	 */
+	public double zeroKL(double[] p, double[] q, int n) {
+		double div = 0.0;
+		double gammaMass = 0.0;
+		for (int i = 0; i < n; i++) {
+			double pi = p[i];
+			if (pi == 0.0)
+				continue;
+
+			if (q[i] <= 0.000001)
+				gammaMass += pi;
+			else
+				div += pi * Math.log(pi / q[i]);
+		}
+
+		return div / LOG2 + gammaMass * 10;
+	}
+
+	/**
+	 * zeroKL() of a vector p in single precision, e.g. the values of a dense
+	 * signature with singlePrecision.
+	 */
+	public double zeroKL(float[] p, double[] q, int n) {
+		double div = 0.0;
+		double gammaMass = 0.0;
+		for (int i = 0; i < n; i++) {
+			double pi = p[i];
+			if (pi == 0.0)
+				continue;
+
+			if (q[i] <= 0.000001)
+				gammaMass += pi;
+			else
+				div += pi * Math.log(pi / q[i]);
+		}
+
+		return div / LOG2 + gammaMass * 10;
+	}
+
+	/**
+	 * y = a * y + b * x, over the first n elements.
+	 */
+	public void scaleAdd(double[] y, double a, double[] x, double b, int n) {
+		for (int i = 0; i < n; i++)
+			y[i] = a * y[i] + b * x[i];
+	}
+
+	/**
+	 * y = a * y + c, over the first n elements.
+	 */
+	public void scaleShift(double[] y, double a, double c, int n) {
+		for (int i = 0; i < n; i++)
+			y[i] = a * y[i] + c;
+	}
+}
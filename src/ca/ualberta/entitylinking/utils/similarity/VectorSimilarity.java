@@ -18,6 +18,8 @@ package ca.ualberta.entitylinking.utils.similarity;
 import java.util.List;
 import java.util.Map;
 
+import ca.ualberta.entitylinking.graph.algorithms.SemanticSignature;
+
 public class VectorSimilarity {
 	public static float vectorSim(Map<String, Float> v1, Map<String, Float> v2){
 		double sim = 0.0;
@@ -54,12 +56,10 @@ public class VectorSimilarity {
 		if (v1.length != v2.length)
 			return 0.0;
 		
-		double prod = 0.0, norm1 = 0.0, norm2 = 0.0;
-		for (int i = 0; i < v1.length; i++) {
-			prod += v1[i]*v2[i];
-			norm1 += v1[i]*v1[i];
-			norm2 += v2[i]*v2[i];
-		}
+		Kernels kernels = Kernels.get();
+		double prod = kernels.dot(v1, v2, v1.length);
+		double norm1 = kernels.sumSquares(v1, v1.length);
+		double norm2 = kernels.sumSquares(v2, v2.length);
 		
 		if (norm1 == 0 || norm2 == 0)
 			return 0;
@@ -84,22 +84,50 @@ public class VectorSimilarity {
 		return prod / (Math.sqrt(norm1)* Math.sqrt(norm2));
 	}
 
-	public static double ZeroKLDivergence(List<Double> v1, List<Double> v2) {
-		if (v1 == null || v2 == null || v1.size() != v2.size())
+	public static double ZeroKLDivergence(double[] v1, double[] v2) {
+		if (v1 == null || v2 == null || v1.length != v2.length)
 			return 0.0;
 		
+		return Kernels.get().zeroKL(v1, v2, v1.length);
+	}
+
+	/**
+	 * ZeroKLDivergence(v1, v2) over a (possibly sparse) signature v1. Only the
+	 * entries kept by v1 are visited; its residual mass is compared with the mass
+	 * v2 puts on the other nodes, as if both were a single node.
+	 */
+	public static double ZeroKLDivergence(SemanticSignature v1, double[] v2) {
+		if (v1 == null || v2 == null || v1.size() != v2.length)
+			return 0.0;
+		if (!v1.isSparse() && v1.isSinglePrecision())
+			return Kernels.get().zeroKL(v1.getFloatValues(), v2, v2.length);
+		if (!v1.isSparse())
+			return ZeroKLDivergence(v1.getValues(), v2);
+
 		double gamma = 10;
 		double div = 0.0;
-		for (int i = 0; i < v1.size(); i++) {
-			if (v1.get(i) == 0.0)
+		double rest = 1.0;
+		for (int j = 0; j < v1.entries(); j++) {
+			double p = v1.value(j);
+			double q = v2[v1.index(j)];
+			rest -= q;
+			if (p == 0.0)
 				continue;
-			
-			if (v2.get(i) <= 0.000001)
-				div += v1.get(i) * gamma;
+
+			if (q <= 0.000001)
+				div += p * gamma;
 			else
-				div += v1.get(i) * Math.log(v1.get(i)/v2.get(i)) / Math.log(2.0);
+				div += p * Math.log(p/q) / Math.log(2.0);
 		}
-		
+
+		double p = v1.getResidual();
+		if (p > 0.0) {
+			if (rest <= 0.000001)
+				div += p * gamma;
+			else
+				div += p * Math.log(p/rest) / Math.log(2.0);
+		}
+
 		return div;
 	}
 }